@@ -6,86 +6,200 @@
 //@toolbar
 
 import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Container;
 import java.awt.GridLayout;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.datatransfer.DataFlavor;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import ghidra.app.cmd.disassemble.DisassembleCommand;
+import ghidra.app.cmd.function.CreateFunctionCmd;
 import ghidra.app.decompiler.DecompInterface;
 import ghidra.app.decompiler.DecompileResults;
 import ghidra.app.decompiler.DecompilerLocation;
+import ghidra.app.emulator.EmulatorHelper;
 import ghidra.app.plugin.core.analysis.AutoAnalysisManager;
 import ghidra.app.script.GhidraScript;
+import ghidra.app.services.CodeViewerService;
 import ghidra.app.services.DataTypeManagerService;
 import ghidra.app.tablechooser.AddressableRowObject;
 import ghidra.app.tablechooser.StringColumnDisplay;
 import ghidra.app.tablechooser.TableChooserDialog;
 import ghidra.app.tablechooser.TableChooserExecutor;
 
+import ghidra.framework.cmd.BackgroundCommand;
+import ghidra.framework.model.DomainObject;
+import ghidra.framework.model.DomainObjectClosedListener;
+import ghidra.framework.options.Options;
 import ghidra.framework.plugintool.PluginTool;
+import ghidra.pcode.memstate.MemoryFaultHandler;
+import ghidra.program.database.ProgramDB;
+import ghidra.program.util.DefaultLanguageService;
 import ghidra.program.util.OperandFieldLocation;
 import ghidra.util.exception.CancelledException;
+import ghidra.util.task.CancelledListener;
 import ghidra.util.exception.NotFoundException;
 import ghidra.util.task.TaskMonitor;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
 import docking.widgets.checkbox.GCheckBox;
+import docking.widgets.filechooser.GhidraFileChooser;
 import docking.widgets.label.GDLabel;
+import docking.widgets.table.RowObjectTableModel;
 import docking.widgets.table.TableSortState;
 import ghidra.program.model.address.Address;
+import ghidra.program.model.address.AddressOutOfBoundsException;
 import ghidra.program.model.address.AddressRange;
+import ghidra.program.model.address.AddressSet;
+import ghidra.program.model.address.AddressSetView;
+import ghidra.program.model.address.AddressSpace;
+import ghidra.program.model.block.BasicBlockModel;
+import ghidra.program.model.block.CodeBlock;
 import ghidra.program.model.data.AbstractIntegerDataType;
 import ghidra.program.model.data.Array;
+import ghidra.program.model.data.ArrayDataType;
 import ghidra.program.model.data.CategoryPath;
 import ghidra.program.model.data.DataType;
 import ghidra.program.model.data.DataTypeConflictHandler;
 import ghidra.program.model.data.DataTypeManager;
 import ghidra.program.model.data.DataTypePath;
+import ghidra.program.model.data.DWordDataType;
 import ghidra.program.model.data.EnumDataType;
+import ghidra.program.model.data.FunctionDefinition;
 import ghidra.program.model.data.FunctionDefinitionDataType;
 import ghidra.program.model.data.PointerDataType;
 import ghidra.program.model.data.SourceArchive;
 import ghidra.program.model.data.StructureDataType;
 import ghidra.program.model.listing.Data;
+import ghidra.program.model.listing.DataIterator;
 import ghidra.program.model.listing.Function;
+import ghidra.program.model.listing.FunctionManager;
 import ghidra.program.model.listing.Instruction;
+import ghidra.program.model.listing.Library;
+import ghidra.program.model.listing.Parameter;
 import ghidra.program.model.listing.Program;
+import ghidra.program.model.listing.ProgramUserData;
+import ghidra.program.model.listing.VariableStorage;
+import ghidra.program.model.lang.CompilerSpec;
+import ghidra.program.model.lang.CompilerSpecID;
+import ghidra.program.model.lang.Language;
+import ghidra.program.model.lang.LanguageID;
+import ghidra.program.model.lang.PrototypeModel;
+import ghidra.program.model.lang.Register;
 import ghidra.program.model.mem.MemoryAccessException;
+import ghidra.program.model.mem.MemoryBlock;
 import ghidra.program.model.pcode.HighFunction;
 import ghidra.program.model.pcode.PcodeOp;
 import ghidra.program.model.pcode.PcodeOpAST;
 import ghidra.program.model.pcode.Varnode;
 import ghidra.program.model.scalar.Scalar;
+import ghidra.program.model.symbol.ExternalLocationIterator;
+import ghidra.program.model.symbol.ExternalManager;
 import ghidra.program.model.symbol.RefType;
 import ghidra.program.model.symbol.Reference;
-
-import java.net.URL;
+import ghidra.program.model.symbol.ReferenceManager;
+import ghidra.program.model.symbol.SourceType;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.security.SecureRandom;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
 import java.awt.event.ActionEvent;
 
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
@@ -95,17 +209,21 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JSpinner;
 import javax.swing.JTabbedPane;
+import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
 
 import org.python.util.PythonInterpreter;
 
 public class HashDB extends GhidraScript {
-	boolean HTTP_DEBUGGING = false;
-	boolean GUI_DEBUGGING = false;
-	boolean PY_DEBUGGING = false;
+	private final Logger logger = new Logger(this::println);
+
+	static final String[] STOCK_TRANSFORMATIONS = { "X  # Unaltered Hash Value", "X ^ 0xBAADF00D  # XOR",
+			"((((X ^ 0x76C7) << 0x10) ^ X) ^ 0xAFB9) & 0x1FFFFF  # REvil" };
 
 	static String getStackTraceAsString(Exception e) {
 		StringWriter sw = new StringWriter();
@@ -114,8 +232,46 @@ public class HashDB extends GhidraScript {
 		return sw.toString();
 	}
 
+	static final String DEFAULT_SERVICE_URL = "https://hashdb.openanalysis.net";
+	static final int DEFAULT_HUNT_CONCURRENCY = 4;
+	static final File DEFAULT_DICTIONARY_DIRECTORY = new File(new File(System.getProperty("user.home"), ".hashdb"),
+			"dictionary");
+
+	interface HuntListener {
+		void partialResult(Map<String, Double> hitRates, long hashesDone, long hashesTotal);
+	}
+
 	private class HashDBApi {
-		private String baseUrl = "https://hashdb.openanalysis.net";
+		private static final int INITIAL_HUNT_SAMPLE = 32;
+		private static final int MAX_HUNT_CHUNK = 1000;
+		private static final double Z_95 = 1.96;
+		private static final int MAX_ATTEMPTS = 4;
+		private static final long INITIAL_BACKOFF_MILLIS = 250;
+		private static final long MAX_BACKOFF_MILLIS = 4000;
+		private static final long MAX_RETRY_AFTER_MILLIS = 30000;
+		private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+		private static final int READ_TIMEOUT_MILLIS = 60000;
+
+		private String baseUrl;
+		private TaskMonitor taskMonitor = null;
+		private List<HashIndex> indexes = null;
+
+		HashDBApi() {
+			this(getSettings() == null ? DEFAULT_SERVICE_URL : getSettings().getServiceUrl());
+		}
+
+		HashDBApi(String baseUrl) {
+			this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		}
+
+		/**
+		 * Ties all requests of this instance to the monitor: cancelling it aborts requests and
+		 * retry delays immediately with a {@link CancelledException}.
+		 */
+		HashDBApi withMonitor(TaskMonitor taskMonitor) {
+			this.taskMonitor = taskMonitor;
+			return this;
+		}
 
 		private class Hashes {
 			@SuppressWarnings({ "unused" })
@@ -126,21 +282,156 @@ public class HashDB extends GhidraScript {
 			}
 		}
 
-		private ArrayList<String> hunt(long[] hashes, double minimumHitcount) throws Exception {
-			ArrayList<String> ret = new ArrayList<String>();
+		/**
+		 * @return the number of hashes in the chunk that each algorithm knows.
+		 */
+		private LinkedHashMap<String, Long> huntChunk(long[] hashes) throws Exception {
+			LinkedHashMap<String, Long> ret = new LinkedHashMap<String, Long>();
 			JsonObject response = JsonParser
 					.parseString(httpQuery("POST", "hunt", new Gson().toJson(new Hashes(hashes)).getBytes()))
 					.getAsJsonObject();
 			for (JsonElement hit : response.get("hits").getAsJsonArray()) {
 				JsonObject row = hit.getAsJsonObject();
-				if (minimumHitcount <= row.get("hitrate").getAsDouble()) {
-					ret.add(row.get("algorithm").getAsString());
+				long count = row.has("count") ? row.get("count").getAsLong()
+						: Math.round(row.get("hitrate").getAsDouble() * hashes.length);
+				ret.put(row.get("algorithm").getAsString(), count);
+			}
+			return ret;
+		}
+
+		/**
+		 * Hunts in chunks of at most {@link #MAX_HUNT_CHUNK} hashes that are posted concurrently, and
+		 * merges the hit counts of all chunks into hit rates for the whole input.
+		 *
+		 * @param listener receives the merged hit rates of all chunks completed so far; may be null.
+		 */
+		private LinkedHashMap<String, Double> huntHitRates(long[] hashes, HuntListener listener) throws Exception {
+			LinkedHashMap<String, Long> counts = new LinkedHashMap<String, Long>();
+			if (hashes.length <= MAX_HUNT_CHUNK) {
+				counts.putAll(huntChunk(hashes));
+				return toHitRates(counts, hashes.length);
+			}
+			int chunkCount = (hashes.length + MAX_HUNT_CHUNK - 1) / MAX_HUNT_CHUNK;
+			int concurrency = getSettings() == null ? 1 : getSettings().getHuntConcurrency();
+			ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, chunkCount)));
+			ExecutorCompletionService<LinkedHashMap<String, Long>> completion = new ExecutorCompletionService<>(
+					executor);
+			HashMap<Future<LinkedHashMap<String, Long>>, Integer> chunkSizes = new HashMap<>();
+			try {
+				for (int k = 0; k < chunkCount; k++) {
+					long[] chunk = Arrays.copyOfRange(hashes, k * MAX_HUNT_CHUNK,
+							Math.min(hashes.length, (k + 1) * MAX_HUNT_CHUNK));
+					chunkSizes.put(completion.submit(() -> huntChunk(chunk)), chunk.length);
+				}
+				long completed = 0;
+				for (int k = 0; k < chunkCount; k++) {
+					Future<LinkedHashMap<String, Long>> future = completion.take();
+					LinkedHashMap<String, Long> chunkCounts;
+					try {
+						chunkCounts = future.get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof Exception)
+							throw (Exception) e.getCause();
+						throw e;
+					}
+					completed += chunkSizes.get(future);
+					for (Map.Entry<String, Long> hit : chunkCounts.entrySet()) {
+						counts.merge(hit.getKey(), hit.getValue(), Long::sum);
+					}
+					if (listener != null && k < chunkCount - 1)
+						listener.partialResult(toHitRates(counts, completed), completed, hashes.length);
+				}
+			} finally {
+				for (Future<LinkedHashMap<String, Long>> future : chunkSizes.keySet()) {
+					future.cancel(true);
 				}
+				executor.shutdownNow();
 			}
+			return toHitRates(counts, hashes.length);
+		}
 
+		private LinkedHashMap<String, Double> toHitRates(Map<String, Long> counts, long total) {
+			LinkedHashMap<String, Double> ret = new LinkedHashMap<String, Double>();
+			counts.entrySet().stream().sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+					.forEach(hit -> ret.put(hit.getKey(), total == 0 ? 0 : (double) hit.getValue() / total));
 			return ret;
 		}
 
+		/**
+		 * Hunts on a random sample of the hashes that is doubled until the result is clear: either
+		 * exactly one algorithm clears the threshold and its hit rate is significantly higher than the
+		 * one of the runner-up, or no algorithm can reach the threshold anymore. Otherwise, the hunt
+		 * ends with the full set and returns the same result as {@link #hunt}.
+		 *
+		 * @param seed seeds the sample selection, so the same input always yields the same samples.
+		 */
+		private ArrayList<String> progressiveHunt(long[] hashes, double minimumHitcount, long seed,
+				HuntListener listener) throws Exception {
+			long[] shuffled = Arrays.stream(hashes).distinct().toArray();
+			java.util.Random random = new java.util.Random(seed);
+			for (int k = shuffled.length - 1; k > 0; k--) {
+				int j = random.nextInt(k + 1);
+				long swap = shuffled[k];
+				shuffled[k] = shuffled[j];
+				shuffled[j] = swap;
+			}
+			int sampleSize = Math.min(INITIAL_HUNT_SAMPLE, shuffled.length);
+			while (true) {
+				long[] sample = Arrays.copyOf(shuffled, sampleSize);
+				LinkedHashMap<String, Double> hitRates = huntHitRates(sample, listener);
+				if (sampleSize == shuffled.length) {
+					logDebugMessage(String.format("Hunted on all %d hashes.", sampleSize));
+					ArrayList<String> ret = new ArrayList<String>();
+					for (Map.Entry<String, Double> hit : hitRates.entrySet()) {
+						if (minimumHitcount <= hit.getValue())
+							ret.add(hit.getKey());
+					}
+					return ret;
+				}
+				List<Map.Entry<String, Double>> ranked = hitRates.entrySet().stream()
+						.sorted(Map.Entry.<String, Double>comparingByValue().reversed()).collect(Collectors.toList());
+				double best = ranked.isEmpty() ? 0 : ranked.get(0).getValue();
+				double runnerUp = ranked.size() < 2 ? 0 : ranked.get(1).getValue();
+				if (best >= minimumHitcount && isSignificantlyHigher(best, runnerUp, sampleSize)) {
+					logDebugMessage(String.format("Hunt settled on %s after sampling %d of %d hashes.",
+							ranked.get(0).getKey(), sampleSize, shuffled.length));
+					ArrayList<String> ret = new ArrayList<String>();
+					ret.add(ranked.get(0).getKey());
+					return ret;
+				}
+				if (wilsonUpperBound(best, sampleSize) < minimumHitcount - 1e-9) {
+					logDebugMessage(String.format(
+							"No algorithm can reach the threshold after sampling %d of %d hashes.", sampleSize,
+							shuffled.length));
+					return new ArrayList<String>();
+				}
+				sampleSize = Math.min(2 * sampleSize, shuffled.length);
+			}
+		}
+
+		/**
+		 * Two-proportion z-test at the 95% level for hit rates measured on samples of equal size.
+		 */
+		private boolean isSignificantlyHigher(double p1, double p2, int n) {
+			if (p2 == 0)
+				return p1 > 0;
+			double pooled = (p1 + p2) / 2;
+			double variance = pooled * (1 - pooled) * 2 / n;
+			if (variance == 0)
+				return p1 > p2;
+			return (p1 - p2) / Math.sqrt(variance) > Z_95;
+		}
+
+		/**
+		 * @return the upper end of the 95% Wilson score interval for a hit rate measured on n hashes.
+		 */
+		private double wilsonUpperBound(double p, int n) {
+			double z2 = Z_95 * Z_95;
+			double center = p + z2 / (2 * n);
+			double margin = Z_95 * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+			return (center + margin) / (1 + z2 / n);
+		}
+
 		public class ApiHashInfo extends HashInfo {
 			public String apiName;
 			public String permutation;
@@ -181,10 +472,54 @@ public class HashDB extends GhidraScript {
 			}
 
 			public abstract String getResolutionName();
+
+			public JsonObject toJson() {
+				JsonObject stringInfo = new JsonObject();
+				stringInfo.addProperty("string", getResolutionName());
+				if (this instanceof ApiHashInfo) {
+					ApiHashInfo info = (ApiHashInfo) this;
+					JsonArray modules = new JsonArray();
+					for (String module : info.modules) {
+						modules.add(module);
+					}
+					stringInfo.addProperty("is_api", true);
+					stringInfo.addProperty("permutation", info.permutation);
+					stringInfo.addProperty("api", info.apiName);
+					stringInfo.add("modules", modules);
+				} else {
+					stringInfo.addProperty("is_api", false);
+				}
+				JsonObject ret = new JsonObject();
+				ret.addProperty("hash", hash);
+				ret.add("string", stringInfo);
+				return ret;
+			}
+
+			public void addTo(HashIndex.Writer writer, String algorithm) {
+				if (this instanceof ApiHashInfo) {
+					ApiHashInfo info = (ApiHashInfo) this;
+					writer.add(algorithm, info.permutation, hash, true, info.apiName, info.modules);
+				} else {
+					writer.add(algorithm, "", hash, false, getResolutionName(), new String[0]);
+				}
+			}
 		}
 
 		private ArrayList<HashInfo> parseHashInfoFromJson(String httpResponse) {
-			JsonObject response = JsonParser.parseString(httpResponse).getAsJsonObject();
+			return parseHashInfoFromJson(JsonParser.parseString(httpResponse).getAsJsonObject());
+		}
+
+		private JsonObject hashInfoToJson(List<HashInfo> hashInfos) {
+			JsonArray hashes = new JsonArray();
+			for (HashInfo hashInfo : hashInfos) {
+				hashes.add(hashInfo.toJson());
+			}
+			JsonObject ret = new JsonObject();
+			ret.add("hashes", hashes);
+			return ret;
+		}
+
+		private ArrayList<HashInfo> parseHashInfoFromJson(JsonObject response) {
 			ArrayList<HashInfo> ret = new ArrayList<HashInfo>();
 			for (JsonElement hashEntry : response.get("hashes").getAsJsonArray()) {
 				JsonObject hashObject = hashEntry.getAsJsonObject();
@@ -230,10 +565,34 @@ public class HashDB extends GhidraScript {
 		}
 
 		private ArrayList<HashInfo> resolve(String algorithm, long hash, String permutation) throws Exception {
-			ArrayList<HashInfo> ret = parseHashInfoFromJson(
-					httpQuery("GET", String.format("hash/%s/%d", algorithm, hash)));
+			return filterPermutation(lookup(algorithm, hash), hash, permutation);
+		}
+
+		/**
+		 * @return every resolution of the hash, regardless of permutation.
+		 */
+		private ArrayList<HashInfo> lookup(String algorithm, long hash) throws Exception {
+			ArrayList<HashInfo> ret = resolutionCache.getHash(algorithm, hash);
+			metrics.recordLookup("cache", ret != null);
+			if (ret == null) {
+				ret = lookupInIndexes(algorithm, hash);
+				metrics.recordLookup("index", ret != null);
+			}
+			if (ret == null) {
+				String endpoint = String.format("hash/%s/%d", algorithm, hash);
+				ret = coalesce(endpoint, () -> {
+					ArrayList<HashInfo> response = parseHashInfoFromJson(httpQuery("GET", endpoint));
+					resolutionCache.putHash(algorithm, hash, response);
+					return response;
+				});
+			}
+			return ret;
+		}
+
+		private ArrayList<HashInfo> filterPermutation(ArrayList<HashInfo> hashInfos, long hash, String permutation)
+				throws Exception {
 			ArrayList<HashInfo> filtered = new ArrayList<HashInfo>();
-			for (HashInfo hashInfo : ret) {
+			for (HashInfo hashInfo : hashInfos) {
 				if (permutation != null && ApiHashInfo.class.isInstance(hashInfo)
 						&& ((ApiHashInfo) hashInfo).permutation.compareTo(permutation) != 0)
 					continue;
@@ -246,227 +605,2973 @@ public class HashDB extends GhidraScript {
 		}
 
 		private ArrayList<HashInfo> module(String module, String algorithm, String permutation) throws Exception {
-			return parseHashInfoFromJson(
-					httpQuery("GET", String.format("module/%s/%s/%s", module, algorithm, permutation)));
+			ArrayList<HashInfo> ret = resolutionCache.getModule(module, algorithm, permutation);
+			metrics.recordLookup("cache", ret != null);
+			if (ret == null) {
+				String endpoint = String.format("module/%s/%s/%s", module, algorithm, permutation);
+				ret = coalesce(endpoint, () -> {
+					ArrayList<HashInfo> response = parseHashInfoFromJson(httpQuery("GET", endpoint));
+					resolutionCache.putModule(module, algorithm, permutation, response);
+					return response;
+				});
+			}
+			return ret;
 		}
 
-		private String httpQuery(String method, String endpoint) throws Exception {
-			return httpQuery(method, endpoint, null);
+		/**
+		 * Sends at most one request per endpoint at a time: callers asking for an endpoint that is
+		 * already being fetched wait for that request and get a copy of its result (or its error).
+		 * A cancel only ends the request of the caller that sent it: the flight is then completed
+		 * with null, and the callers waiting for it send the request again.
+		 */
+		private ArrayList<HashInfo> coalesce(String endpoint, Callable<ArrayList<HashInfo>> request) throws Exception {
+			String key = String.format("%s/%s", baseUrl, endpoint);
+			while (true) {
+				CompletableFuture<ArrayList<HashInfo>> flight = new CompletableFuture<ArrayList<HashInfo>>();
+				CompletableFuture<ArrayList<HashInfo>> existing = inFlightRequests.putIfAbsent(key, flight);
+				metrics.recordLookup("inflight", existing != null);
+				if (existing != null) {
+					ArrayList<HashInfo> shared = await(existing.copy());
+					if (shared == null)
+						continue;
+					return new ArrayList<HashInfo>(shared);
+				}
+				try {
+					ArrayList<HashInfo> ret = request.call();
+					flight.complete(ret);
+					return ret;
+				} catch (CancelledException e) {
+					inFlightRequests.remove(key, flight);
+					flight.complete(null);
+					throw e;
+				} catch (Exception e) {
+					flight.completeExceptionally(e);
+					throw e;
+				} finally {
+					inFlightRequests.remove(key, flight);
+				}
+			}
 		}
 
-		private String httpQuery(String method, String endpoint, byte[] postData) throws Exception {
-			String urlString = String.format("%s/%s", baseUrl, endpoint);
-			if (HTTP_DEBUGGING) {
-				logDebugMessage(String.format("%s %s", method, urlString));
-			}
-			URL url = new URL(urlString);
-			SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-			sslContext.init(null, null, new SecureRandom());
-			HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-			conn.setSSLSocketFactory(sslContext.getSocketFactory());
+		/**
+		 * The index files are opened once per instance, i.e. once per run, instead of for every hash.
+		 */
+		private synchronized List<HashIndex> getIndexes() {
+			if (indexes == null)
+				indexes = getConfiguredIndexes();
+			return indexes;
+		}
 
-			conn.setInstanceFollowRedirects(true);
-			conn.setDoOutput(true);
-			conn.setRequestMethod(method);
-			conn.setUseCaches(false);
-			if (postData != null) {
-				conn.setRequestProperty("Content-Type", "application/json; utf-8");
-				conn.setRequestProperty("Content-Length", Integer.toString(postData.length));
-				try (OutputStream wr = conn.getOutputStream()) {
-					wr.write(postData);
+		private ArrayList<HashInfo> lookupInIndexes(String algorithm, long hash) {
+			ArrayList<HashInfo> ret = null;
+			for (HashIndex index : getIndexes()) {
+				for (HashIndex.Entry entry : index.lookup(algorithm, hash)) {
+					if (ret == null)
+						ret = new ArrayList<HashInfo>();
+					ret.add(entry.toHashInfo(this, hash));
 				}
 			}
+			return ret;
+		}
+
+		private String httpQuery(String method, String endpoint) throws Exception {
+			return httpQuery(method, endpoint, null);
+		}
 
-			try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), "utf-8"))) {
-				StringBuilder response = new StringBuilder();
-				String responseLine = null;
-				while ((responseLine = br.readLine()) != null) {
-					response.append(responseLine.trim());
+		/**
+		 * Sends a request with bounded retries: I/O errors, time-outs and 5xx responses are retried
+		 * after a jittered exponential backoff, 429 and 503 responses after the delay the server asks
+		 * for. Requests fail fast while the circuit breaker of the service is open, and GET requests
+		 * are hedged when that is enabled.
+		 */
+		private String httpQuery(String method, String endpoint, byte[] postData) throws Exception {
+			ServiceHealth health = serviceHealth.computeIfAbsent(baseUrl, k -> new ServiceHealth());
+			boolean hedge = postData == null && getSettings() != null && getSettings().hedgeRequests();
+			IOException lastError = null;
+			for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+				boolean trial = health.acquire(baseUrl);
+				long delay = backoffMillis(attempt);
+				try {
+					long start = System.nanoTime();
+					String ret = hedge ? hedgedQuery(method, endpoint, health)
+							: httpAttempt(method, endpoint, postData);
+					health.recordSuccess(System.nanoTime() - start);
+					return ret;
+				} catch (HttpStatusException e) {
+					lastError = e;
+					if (!e.isRetryable()) {
+						health.recordReachable();
+						throw e;
+					}
+					if (e.status == 429) {
+						health.recordReachable();
+					} else {
+						health.recordFailure();
+					}
+					if (e.retryAfterMillis > MAX_RETRY_AFTER_MILLIS)
+						throw e;
+					if (e.retryAfterMillis >= 0)
+						delay = e.retryAfterMillis;
+				} catch (IOException e) {
+					lastError = e;
+					health.recordFailure();
+				} finally {
+					if (trial)
+						health.releaseTrial();
 				}
-				if (HTTP_DEBUGGING) {
-					logDebugMessage(String.format("HTTP Response: %s", response));
+				if (attempt + 1 < MAX_ATTEMPTS) {
+					logDebugMessage(String.format("%s %s failed (%s), retrying in %d ms", method, endpoint,
+							lastError.getMessage(), delay));
+					sleep(delay);
 				}
-				return response.toString();
 			}
+			throw lastError;
 		}
-	}
 
-	private class HashTableExecutor implements TableChooserExecutor {
-		public HashTableExecutor() {
+		private long backoffMillis(int attempt) {
+			long ceiling = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << attempt);
+			return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+		}
 
+		/**
+		 * Sends a duplicate request when the first one takes longer than the 95th percentile of
+		 * recent requests to the service, and returns whichever succeeds first.
+		 */
+		private String hedgedQuery(String method, String endpoint, ServiceHealth health) throws Exception {
+			long p95 = health.p95Nanos();
+			if (p95 < 0)
+				return httpAttempt(method, endpoint, null);
+			CompletableFuture<String> primary = sendAsync(method, endpoint, null);
+			CompletableFuture<String> hedged = null;
+			try {
+				String ret = await(primary.copy().completeOnTimeout(null, p95, TimeUnit.NANOSECONDS));
+				if (ret != null)
+					return ret;
+				hedged = sendAsync(method, endpoint, null);
+				CompletableFuture<String> first = new CompletableFuture<String>();
+				primary.thenAccept(first::complete);
+				hedged.thenAccept(first::complete);
+				CompletableFuture.allOf(primary, hedged).whenComplete((ignored, e) -> {
+					if (e != null)
+						first.completeExceptionally(e);
+				});
+				ret = await(first);
+				metrics.recordLookup("hedge", hedged.isDone() && !hedged.isCompletedExceptionally()
+						&& (!primary.isDone() || primary.isCompletedExceptionally()));
+				return ret;
+			} finally {
+				primary.cancel(true);
+				if (hedged != null)
+					hedged.cancel(true);
+			}
 		}
 
-		@Override
-		public String getButtonName() {
-			return "Query!";
+		/**
+		 * Waits for the future unless the task monitor of this instance is cancelled first, in which
+		 * case the future is cancelled and a {@link CancelledException} is thrown right away.
+		 */
+		private <T> T await(CompletableFuture<T> future) throws Exception {
+			CancelledListener listener = () -> future.cancel(true);
+			if (taskMonitor != null) {
+				taskMonitor.addCancelledListener(listener);
+				if (taskMonitor.isCancelled())
+					future.cancel(true);
+			}
+			try {
+				return future.get();
+			} catch (CancellationException e) {
+				throw new CancelledException();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+				if (cause instanceof CancellationException)
+					throw new CancelledException();
+				if (cause instanceof Exception)
+					throw (Exception) cause;
+				throw e;
+			} finally {
+				if (taskMonitor != null)
+					taskMonitor.removeCancelledListener(listener);
+			}
 		}
 
-		@Override
-		public boolean execute(AddressableRowObject rowObject) {
-			return false;
+		private void sleep(long millis) throws Exception {
+			await(CompletableFuture.runAsync(() -> {
+			}, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS)));
+		}
+
+		private String httpAttempt(String method, String endpoint, byte[] postData) throws Exception {
+			return await(sendAsync(method, endpoint, postData));
 		}
 
+		private CompletableFuture<String> sendAsync(String method, String endpoint, byte[] postData)
+				throws Exception {
+			String urlString = String.format("%s/%s", baseUrl, endpoint);
+			if (isHttpDebugging()) {
+				logDebugMessage(String.format("%s %s", method, urlString));
+			}
+			HttpRequest.Builder request = HttpRequest.newBuilder(new URI(urlString))
+					.timeout(Duration.ofMillis(READ_TIMEOUT_MILLIS));
+			if (postData != null) {
+				request.header("Content-Type", "application/json; utf-8");
+				request.method(method, HttpRequest.BodyPublishers.ofByteArray(postData));
+			} else {
+				request.method(method, HttpRequest.BodyPublishers.noBody());
+			}
+			long sent = postData == null ? 0 : postData.length;
+			Metrics.HttpRequestEvent event = metrics.beginHttpRequest(method, endpoint);
+			long start = System.nanoTime();
+			CompletableFuture<HttpResponse<byte[]>> exchange = getHttpClient().sendAsync(request.build(),
+					HttpResponse.BodyHandlers.ofByteArray());
+			CompletableFuture<String> ret = exchange
+					.whenComplete((response, e) -> metrics.endHttpRequest(event, System.nanoTime() - start, sent,
+							response == null ? 0 : response.body().length, e != null || response.statusCode() >= 400))
+					.thenApply(response -> {
+						if (response.statusCode() >= 400) {
+							throw new CompletionException(new HttpStatusException(urlString, response.statusCode(),
+									HttpStatusException.parseRetryAfter(
+											response.headers().firstValue("Retry-After").orElse(null))));
+						}
+						String body = new String(response.body(), StandardCharsets.UTF_8).lines().map(String::trim)
+								.collect(Collectors.joining());
+						if (isHttpDebugging()) {
+							logDebugMessage(String.format("HTTP Response: %s", body));
+						}
+						return body;
+					});
+			// cancelling a dependent stage does not reach the exchange, so forward it to abort the request
+			ret.whenComplete((body, e) -> {
+				if (ret.isCancelled())
+					exchange.cancel(true);
+			});
+			return ret;
+		}
 	}
 
-	public enum TransformInvertibility {
-		NotInvertible, SelfInverse, Manual
+	private static HttpClient httpClient = null;
+
+	static synchronized HttpClient getHttpClient() throws Exception {
+		if (httpClient == null) {
+			SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+			sslContext.init(null, null, new SecureRandom());
+			httpClient = HttpClient.newBuilder().sslContext(sslContext).followRedirects(HttpClient.Redirect.NORMAL)
+					.connectTimeout(Duration.ofMillis(HashDBApi.CONNECT_TIMEOUT_MILLIS)).executor(httpExecutor)
+					.build();
+		}
+		return httpClient;
 	}
 
-	public class GuiState {
-		public TransformInvertibility transformInvertibility;
+	static class HttpStatusException extends IOException {
+		final int status;
+		final long retryAfterMillis;
 
-		public GuiState(TransformInvertibility transformInvertibility) {
-			this.transformInvertibility = transformInvertibility;
+		HttpStatusException(String url, int status, long retryAfterMillis) {
+			super(String.format("HTTP %d for %s", status, url));
+			this.status = status;
+			this.retryAfterMillis = retryAfterMillis;
+		}
+
+		boolean isRetryable() {
+			return status >= 500 || status == 408 || status == 429;
+		}
+
+		/**
+		 * @return the delay requested by a Retry-After header (seconds or an HTTP date), or -1.
+		 */
+		static long parseRetryAfter(String value) {
+			if (value == null || value.isBlank())
+				return -1;
+			try {
+				return Math.max(0, Long.parseLong(value.trim()) * 1000);
+			} catch (NumberFormatException e) {
+				try {
+					return Math.max(0, ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+							.toInstant().toEpochMilli() - System.currentTimeMillis());
+				} catch (DateTimeParseException f) {
+					return -1;
+				}
+			}
 		}
 	}
 
-	public enum OutputMethod {
-		Enum, Struct
+	static class ServiceUnavailableException extends IOException {
+		ServiceUnavailableException(String url, long retryInMillis) {
+			super(String.format("%s is unavailable, retrying in %d s", url, (retryInMillis + 999) / 1000));
+		}
 	}
 
-	class HashTable extends TableChooserDialog {
-		private JTextField enumNameTextField;
-		private JTextField nonApiResolutionEnumName;
-		private JTextField transformationInverseTextField;
-		private JComboBox<String> transformationTextField;
-		private JComboBox<String> hashAlgorithmField;
-		private JComboBox<String> permutationField;
-		private JTextField hashAlgorithmThresholdField;
-		private GCheckBox resolveModulesCheckbox;
-		private JTextField crawlFunctionName;
-		private JSpinner crawlParameterIndex;
-		private SpinnerNumberModel crawlParameterIndexModel;
+	/*-
+	 * Shared health of one HashDB service URL: the latencies of recent successful requests, from
+	 * which the hedging delay is taken, and a circuit breaker. After FAILURE_THRESHOLD consecutive
+	 * failures the circuit opens and requests fail immediately for OPEN_MILLIS. Then a single trial
+	 * request is let through, and the circuit closes again when it succeeds.
+	 */
+	static class ServiceHealth {
+		static final int FAILURE_THRESHOLD = 5;
+		static final long OPEN_MILLIS = 30000;
+		static final int LATENCY_WINDOW = 128;
+		static final int MIN_LATENCY_SAMPLES = 20;
+
+		private final long[] latencies = new long[LATENCY_WINDOW];
+		private int latencyCount = 0;
+		private int consecutiveFailures = 0;
+		private long openUntil = 0;
+		private boolean trialInFlight = false;
+
+		/**
+		 * @return true if the caller sends the single trial request of a half-open breaker; it must
+		 *         then call {@link #releaseTrial()} when the request ends.
+		 */
+		synchronized boolean acquire(String url) throws ServiceUnavailableException {
+			if (consecutiveFailures < FAILURE_THRESHOLD)
+				return false;
+			long now = System.currentTimeMillis();
+			if (now < openUntil || trialInFlight)
+				throw new ServiceUnavailableException(url, Math.max(0, openUntil - now));
+			trialInFlight = true;
+			return true;
+		}
 
-		private GCheckBox transformationIsSelfInverseCheckbox;
-		private GCheckBox transformationIsNotInvertibleCheckbox;
+		/**
+		 * Lets the next request try the service when a trial ended without an outcome, e.g. because
+		 * it was cancelled.
+		 */
+		synchronized void releaseTrial() {
+			trialInFlight = false;
+		}
 
-		private JRadioButton outputStructRadio;
-		private JRadioButton outputEnumRadio;
+		synchronized void recordSuccess(long nanos) {
+			recordReachable();
+			latencies[latencyCount++ % LATENCY_WINDOW] = nanos;
+		}
 
-		public HashTable(PluginTool tool, TableChooserExecutor executor, Program program, String title) {
-			super(tool, executor, program, title, null, false);
-			setFocusComponent(okButton);
-			okButton.setMnemonic('Q');
+		synchronized void recordReachable() {
+			consecutiveFailures = 0;
+			trialInFlight = false;
 		}
 
-		@Override
-		public void show() {
-			super.show();
-			setSortState(TableSortState.createUnsortedSortState());
+		synchronized void recordFailure() {
+			trialInFlight = false;
+			if (++consecutiveFailures >= FAILURE_THRESHOLD)
+				openUntil = System.currentTimeMillis() + OPEN_MILLIS;
 		}
 
-		@Override
-		protected void setOkEnabled(boolean state) {
-			return;
+		/**
+		 * @return the 95th percentile of recent request latencies, or -1 if there are too few.
+		 */
+		synchronized long p95Nanos() {
+			int count = Math.min(latencyCount, LATENCY_WINDOW);
+			if (count < MIN_LATENCY_SAMPLES)
+				return -1;
+			long[] sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+			return sorted[(int) Math.ceil(0.95 * count) - 1];
 		}
+	}
 
-		public OutputMethod getOutputMethod() throws IllegalStateException {
-			if (outputStructRadio.isSelected())
-				return OutputMethod.Struct;
-			if (outputEnumRadio.isSelected())
-				return OutputMethod.Enum;
-			throw new IllegalStateException();
+	static Map<String, ServiceHealth> serviceHealth = new ConcurrentHashMap<String, ServiceHealth>();
+	static ExecutorService httpExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "HashDB HTTP client");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/*-
+	 * Collects timings and counters for a single resolution or scan run. Phases, HTTP requests
+	 * and decompiles are additionally emitted as JFR events, so a recording taken with Java
+	 * Mission Control shows them next to GC and thread activity.
+	 */
+	static class Metrics {
+		private static final long[] LATENCY_BUCKETS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 };
+
+		@Name("hashdb.Phase")
+		@Label("Pipeline Phase")
+		@Category("HashDB")
+		static class PhaseEvent extends Event {
+			@Label("Phase")
+			String phase;
 		}
 
-		private String getComboBoxValue(JComboBox<String> box) {
-			String currentText;
-			try {
-				currentText = box.getEditor().getItem().toString();
-			} catch (Exception e1) {
-				try {
-					currentText = box.getSelectedItem().toString();
-				} catch (Exception e2) {
-					return null;
-				}
-			}
-			if (currentText.isBlank())
-				return null;
-			return currentText.trim();
+		@Name("hashdb.HttpRequest")
+		@Label("HTTP Request")
+		@Category("HashDB")
+		static class HttpRequestEvent extends Event {
+			@Label("Method")
+			String method;
+			@Label("Endpoint")
+			String endpoint;
+			@Label("Bytes Sent")
+			@DataAmount
+			long bytesSent;
+			@Label("Bytes Received")
+			@DataAmount
+			long bytesReceived;
+			@Label("Failed")
+			boolean failed;
 		}
 
-		private void addToComboBox(JComboBox<String> box, String value, boolean selectIt) {
-			boolean exists = false;
-			if (value == null)
-				return;
-			value = value.trim();
-			if (getComboBoxValue(box) == value)
-				exists = true;
-			for (int k = 0; !exists && k < box.getItemCount(); k++) {
-				String item = box.getItemAt(k);
-				if (item.compareTo(value) == 0)
-					exists = true;
-			}
-			if (!exists)
-				box.addItem(value);
-			if (selectIt)
-				box.setSelectedItem(value);
+		@Name("hashdb.Decompile")
+		@Label("Decompile")
+		@Category("HashDB")
+		static class DecompileEvent extends Event {
+			@Label("Function")
+			String function;
+			@Label("Completed")
+			boolean completed;
 		}
 
-		public void addNewPermutation(String permutation, boolean selectIt) {
-			int index = 0;
-			int count = permutationField.getItemCount();
-			boolean exists = false;
-			permutation = permutation.trim();
-			for (index = 0; index < count; index++) {
-				int stringDiff = permutation.compareTo(permutationField.getItemAt(index));
-				if (stringDiff == 0) {
-					exists = true;
-					break;
-				} else if (stringDiff < 0) {
-					break;
-				}
+		class Phase implements AutoCloseable {
+			private final String name;
+			private final long start = System.nanoTime();
+			private final PhaseEvent event = new PhaseEvent();
+
+			Phase(String name) {
+				this.name = name;
+				event.phase = name;
+				event.begin();
+			}
+
+			@Override
+			public void close() {
+				event.commit();
+				recordPhase(name, System.nanoTime() - start);
 			}
-			if (!exists)
-				permutationField.insertItemAt(permutation, index);
-			if (selectIt)
-				permutationField.setSelectedItem(permutation);
 		}
 
-		public String getCurrentPermutation() {
-			return getComboBoxValue(permutationField);
+		private final String operation;
+		private final long startedAt = System.currentTimeMillis();
+		private final long start = System.nanoTime();
+		private long wallNanos = -1;
+		private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+		private final long[] latencyHistogram = new long[LATENCY_BUCKETS.length + 1];
+		private long httpRequests = 0;
+		private long httpErrors = 0;
+		private long httpNanos = 0;
+		private long httpMaxNanos = 0;
+		private long bytesSent = 0;
+		private long bytesReceived = 0;
+		private final Map<String, long[]> lookups = new LinkedHashMap<String, long[]>();
+		private long decompilerProcesses = 0;
+		private long decompiles = 0;
+		private long failedDecompiles = 0;
+		private long decompileNanos = 0;
+		private long decompileMaxNanos = 0;
+
+		Metrics(String operation) {
+			this.operation = operation;
 		}
 
-		public void addNewHashAlgorithm(String algorithm, boolean selectIt) {
-			addToComboBox(hashAlgorithmField, algorithm, selectIt);
+		public Phase phase(String name) {
+			return new Phase(name);
 		}
 
-		public String getCurrentHashAlgorithm() {
-			return getComboBoxValue(hashAlgorithmField);
+		public HttpRequestEvent beginHttpRequest(String method, String endpoint) {
+			HttpRequestEvent event = new HttpRequestEvent();
+			event.method = method;
+			event.endpoint = endpoint;
+			event.begin();
+			return event;
 		}
 
-		public String getTransformation() {
-			return transformationTextField.getEditor().getItem().toString();
+		public void endHttpRequest(HttpRequestEvent event, long nanos, long sent, long received, boolean failed) {
+			event.bytesSent = sent;
+			event.bytesReceived = received;
+			event.failed = failed;
+			event.commit();
+			synchronized (this) {
+				httpRequests++;
+				if (failed)
+					httpErrors++;
+				httpNanos += nanos;
+				httpMaxNanos = Math.max(httpMaxNanos, nanos);
+				bytesSent += sent;
+				bytesReceived += received;
+				long millis = nanos / 1000000;
+				int bucket = 0;
+				while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket])
+					bucket++;
+				latencyHistogram[bucket]++;
+			}
 		}
 
-		public boolean isTransformationInvertible() {
-			return !transformationIsNotInvertibleCheckbox.isSelected();
+		public synchronized void recordDecompilerProcess() {
+			decompilerProcesses++;
 		}
 
-		public String getTransformationInverse() throws IllegalStateException {
-			if (transformationIsNotInvertibleCheckbox.isSelected()) {
-				throw new IllegalStateException();
-			}
-			if (transformationIsSelfInverseCheckbox.isSelected()) {
-				return getTransformation();
-			}
-			return transformationInverseTextField.getText();
+		public synchronized long getDecompilerProcesses() {
+			return decompilerProcesses;
 		}
 
-		public String getStorageName() {
-			return enumNameTextField.getText();
+		public synchronized long getDecompiles() {
+			return decompiles;
 		}
 
-		public String getNonApiEnumName() {
-			return nonApiResolutionEnumName.getText();
+		public DecompileEvent beginDecompile(Function function) {
+			DecompileEvent event = new DecompileEvent();
+			event.function = function.getName();
+			event.begin();
+			return event;
 		}
 
-		public boolean resolveEntireModules() {
-			return resolveModulesCheckbox.isSelected();
+		public void endDecompile(DecompileEvent event, long nanos, boolean completed) {
+			event.completed = completed;
+			event.commit();
+			synchronized (this) {
+				decompiles++;
+				if (!completed)
+					failedDecompiles++;
+				decompileNanos += nanos;
+				decompileMaxNanos = Math.max(decompileMaxNanos, nanos);
+			}
 		}
 
-		public double getAlgorithmThreshold() {
-			try {
-				double threshold = Double.parseDouble(hashAlgorithmThresholdField.getText());
+		/**
+		 * @param tier the lookup tier, e.g. "cache" or "index".
+		 */
+		public synchronized void recordLookup(String tier, boolean hit) {
+			lookups.computeIfAbsent(tier, k -> new long[2])[hit ? 0 : 1]++;
+		}
+
+		private synchronized void recordPhase(String name, long nanos) {
+			long[] phase = phases.computeIfAbsent(name, k -> new long[2]);
+			phase[0]++;
+			phase[1] += nanos;
+		}
+
+		public synchronized void finish() {
+			if (wallNanos < 0)
+				wallNanos = System.nanoTime() - start;
+		}
+
+		private static double seconds(long nanos) {
+			return nanos / 1e9;
+		}
+
+		private static double millis(long nanos) {
+			return nanos / 1e6;
+		}
+
+		private static String formatBytes(long bytes) {
+			if (bytes < 1024)
+				return String.format("%d B", bytes);
+			if (bytes < 1024 * 1024)
+				return String.format("%.1f KiB", bytes / 1024.0);
+			return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+		}
+
+		private long phaseNanos(String name) {
+			long[] phase = phases.get(name);
+			return phase == null ? 0 : phase[1];
+		}
+
+		/**
+		 * @return a single line suitable for the status bar of the dialog.
+		 */
+		public synchronized String summary() {
+			finish();
+			ArrayList<String> parts = new ArrayList<String>();
+			if (httpRequests > 0) {
+				parts.add(String.format("network %.1fs in %d requests (%s)", seconds(httpNanos), httpRequests,
+						formatBytes(bytesSent + bytesReceived)));
+			}
+			long[] cache = lookups.get("cache");
+			if (cache != null) {
+				parts.add(String.format("cache %d/%d hits", cache[0], cache[0] + cache[1]));
+			}
+			if (phases.containsKey("transformHashes")) {
+				parts.add(String.format("transformation %.1fs", seconds(phaseNanos("transformHashes"))));
+			}
+			if (decompiles > 0) {
+				parts.add(String.format("decompiler %.1fs in %d runs", seconds(decompileNanos), decompiles));
+			}
+			if (parts.isEmpty())
+				return String.format("Took %.1fs.", seconds(wallNanos));
+			return String.format("Took %.1fs: %s.", seconds(wallNanos), String.join(", ", parts));
+		}
+
+		public synchronized JsonObject toJson() {
+			finish();
+			JsonObject ret = new JsonObject();
+			ret.addProperty("operation", operation);
+			ret.addProperty("started", java.time.Instant.ofEpochMilli(startedAt).toString());
+			ret.addProperty("wallMillis", millis(wallNanos));
+
+			JsonObject phasesJson = new JsonObject();
+			for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+				JsonObject phase = new JsonObject();
+				phase.addProperty("count", entry.getValue()[0]);
+				phase.addProperty("millis", millis(entry.getValue()[1]));
+				phasesJson.add(entry.getKey(), phase);
+			}
+			ret.add("phases", phasesJson);
+
+			JsonObject http = new JsonObject();
+			http.addProperty("requests", httpRequests);
+			http.addProperty("errors", httpErrors);
+			http.addProperty("bytesSent", bytesSent);
+			http.addProperty("bytesReceived", bytesReceived);
+			http.addProperty("totalMillis", millis(httpNanos));
+			http.addProperty("maxMillis", millis(httpMaxNanos));
+			JsonObject histogram = new JsonObject();
+			for (int k = 0; k < latencyHistogram.length; k++) {
+				String bucket = k < LATENCY_BUCKETS.length ? String.format("<=%dms", LATENCY_BUCKETS[k])
+						: String.format(">%dms", LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1]);
+				histogram.addProperty(bucket, latencyHistogram[k]);
+			}
+			http.add("latencyHistogram", histogram);
+			ret.add("http", http);
+
+			JsonObject lookupsJson = new JsonObject();
+			for (Map.Entry<String, long[]> entry : lookups.entrySet()) {
+				JsonObject tier = new JsonObject();
+				long hits = entry.getValue()[0];
+				long misses = entry.getValue()[1];
+				tier.addProperty("hits", hits);
+				tier.addProperty("misses", misses);
+				tier.addProperty("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+				lookupsJson.add(entry.getKey(), tier);
+			}
+			ret.add("lookups", lookupsJson);
+
+			JsonObject decompiler = new JsonObject();
+			decompiler.addProperty("processes", decompilerProcesses);
+			decompiler.addProperty("count", decompiles);
+			decompiler.addProperty("failed", failedDecompiles);
+			decompiler.addProperty("totalMillis", millis(decompileNanos));
+			decompiler.addProperty("maxMillis", millis(decompileMaxNanos));
+			ret.add("decompiler", decompiler);
+			return ret;
+		}
+
+		/**
+		 * Writes the report to {@code <tmpdir>/hashdb/reports} and returns the file.
+		 */
+		public File writeReport() throws IOException {
+			return HashDB.writeReport(operation, startedAt, toJson());
+		}
+	}
+
+	static File writeReport(String name, long startedAt, JsonObject report) throws IOException {
+		File directory = new File(new File(System.getProperty("java.io.tmpdir"), "hashdb"), "reports");
+		Files.createDirectories(directory.toPath());
+		String timestamp = new java.text.SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new java.util.Date(startedAt));
+		File output = new File(directory, String.format("%s-%s.json", name, timestamp));
+		String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+		Files.write(output.toPath(), json.getBytes(StandardCharsets.UTF_8));
+		return output;
+	}
+
+	private Metrics metrics = new Metrics("idle");
+
+	private void writeMetricsReport() {
+		try {
+			File report = metrics.writeReport();
+			logDebugMessage(String.format("Wrote metrics report to %s", report));
+		} catch (IOException e) {
+			logDebugMessage("unable to write metrics report", e);
+		}
+	}
+
+	static class ResolutionCache {
+		private final Map<String, Map<Long, ArrayList<HashDBApi.HashInfo>>> hashes = new HashMap<>();
+		private final Map<String, Map<String, ArrayList<HashDBApi.HashInfo>>> modules = new HashMap<>();
+
+		synchronized ArrayList<HashDBApi.HashInfo> getHash(String algorithm, long hash) {
+			ArrayList<HashDBApi.HashInfo> cached = hashes.getOrDefault(algorithm, Map.of()).get(hash);
+			return cached == null ? null : new ArrayList<HashDBApi.HashInfo>(cached);
+		}
+
+		synchronized void putHash(String algorithm, long hash, ArrayList<HashDBApi.HashInfo> hashInfos) {
+			hashes.computeIfAbsent(algorithm, k -> new HashMap<>()).put(hash,
+					new ArrayList<HashDBApi.HashInfo>(hashInfos));
+		}
+
+		synchronized ArrayList<HashDBApi.HashInfo> getModule(String module, String algorithm, String permutation) {
+			ArrayList<HashDBApi.HashInfo> cached = modules.getOrDefault(algorithm, Map.of())
+					.get(module + "/" + permutation);
+			return cached == null ? null : new ArrayList<HashDBApi.HashInfo>(cached);
+		}
+
+		synchronized void putModule(String module, String algorithm, String permutation,
+				ArrayList<HashDBApi.HashInfo> hashInfos) {
+			modules.computeIfAbsent(algorithm, k -> new HashMap<>()).put(module + "/" + permutation,
+					new ArrayList<HashDBApi.HashInfo>(hashInfos));
+		}
+
+		synchronized void exportTo(HashIndex.Writer writer) {
+			for (Map.Entry<String, Map<Long, ArrayList<HashDBApi.HashInfo>>> byAlgorithm : hashes.entrySet()) {
+				for (ArrayList<HashDBApi.HashInfo> hashInfos : byAlgorithm.getValue().values()) {
+					for (HashDBApi.HashInfo hashInfo : hashInfos) {
+						hashInfo.addTo(writer, byAlgorithm.getKey());
+					}
+				}
+			}
+			for (Map.Entry<String, Map<String, ArrayList<HashDBApi.HashInfo>>> byAlgorithm : modules.entrySet()) {
+				for (ArrayList<HashDBApi.HashInfo> hashInfos : byAlgorithm.getValue().values()) {
+					for (HashDBApi.HashInfo hashInfo : hashInfos) {
+						hashInfo.addTo(writer, byAlgorithm.getKey());
+					}
+				}
+			}
+		}
+	}
+
+	static ResolutionCache resolutionCache = new ResolutionCache();
+	static Map<String, CompletableFuture<ArrayList<HashDBApi.HashInfo>>> inFlightRequests = new ConcurrentHashMap<>();
+
+	/*-
+	 * Immutable index file of known resolutions, memory-mapped for lookup. Layout (big endian):
+	 *
+	 *   "HDBIDX02" | int sectionCount | sectionCount * directory entry | section data
+	 *
+	 * A directory entry is the algorithm and permutation (each as short length + UTF-8), the entry
+	 * count and the file offsets of the sorted hash array (long[count]), the record offsets
+	 * (int[count]) and the string heap. Each heap record is a byte flag (1 for API resolutions),
+	 * the resolved name and a short-counted list of module names, strings again as short length +
+	 * UTF-8. Non-API resolutions are stored under the empty permutation.
+	 */
+	static class HashIndex {
+		static final byte[] MAGIC = "HDBIDX02".getBytes(StandardCharsets.US_ASCII);
+		static final int MAX_MODULES = 0xFFFF;
+
+		/**
+		 * @return whether the file starts with an older version of the given magic, whose last two
+		 *         characters are the format version.
+		 */
+		static boolean isOlderVersion(byte[] magic, byte[] expected) {
+			return Arrays.equals(magic, 0, magic.length - 2, expected, 0, expected.length - 2);
+		}
+
+		static class Entry {
+			final boolean isApi;
+			final String name;
+			final String permutation;
+			final String[] modules;
+
+			Entry(boolean isApi, String name, String permutation, String[] modules) {
+				this.isApi = isApi;
+				this.name = name;
+				this.permutation = permutation;
+				this.modules = modules;
+			}
+
+			HashDBApi.HashInfo toHashInfo(HashDBApi api, long hash) {
+				if (isApi) {
+					return api.new ApiHashInfo(hash, name, permutation, modules);
+				}
+				return api.new NonApiHashInfo(hash, name);
+			}
+		}
+
+		static class Section {
+			final String algorithm;
+			final String permutation;
+			final int count;
+			private final LongBuffer hashes;
+			private final IntBuffer records;
+			private final ByteBuffer heap;
+
+			Section(String algorithm, String permutation, int count, LongBuffer hashes, IntBuffer records,
+					ByteBuffer heap) {
+				this.algorithm = algorithm;
+				this.permutation = permutation;
+				this.count = count;
+				this.hashes = hashes;
+				this.records = records;
+				this.heap = heap;
+			}
+
+			long hashAt(int index) {
+				return hashes.get(index);
+			}
+
+			int find(long hash) {
+				int lo = 0;
+				int hi = count - 1;
+				while (lo <= hi) {
+					int mid = (lo + hi) >>> 1;
+					long value = hashes.get(mid);
+					if (value < hash) {
+						lo = mid + 1;
+					} else if (value > hash) {
+						hi = mid - 1;
+					} else {
+						while (mid > 0 && hashes.get(mid - 1) == hash)
+							mid--;
+						return mid;
+					}
+				}
+				return -1;
+			}
+
+			Entry entryAt(int index) {
+				int[] position = { records.get(index) };
+				boolean isApi = heap.get(position[0]++) != 0;
+				String name = readString(heap, position);
+				String[] modules = new String[heap.getShort(position[0]) & 0xFFFF];
+				position[0] += 2;
+				for (int k = 0; k < modules.length; k++) {
+					modules[k] = readString(heap, position);
+				}
+				return new Entry(isApi, name, permutation, modules);
+			}
+		}
+
+		final File file;
+		final long lastModified;
+		final long length;
+		private final ArrayList<Section> sections = new ArrayList<Section>();
+
+		private HashIndex(File file) throws IOException {
+			this.file = file;
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+			MappedByteBuffer map;
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				if (channel.size() > Integer.MAX_VALUE) {
+					throw new IOException(String.format("index file %s is larger than 2GB", file));
+				}
+				map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			byte[] magic = new byte[MAGIC.length];
+			map.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				if (isOlderVersion(magic, MAGIC))
+					throw new IOException(String.format("%s was written by an older version, rebuild it", file));
+				throw new IOException(String.format("%s is not a HashDB index file", file));
+			}
+			int sectionCount = map.getInt();
+			int[] position = { map.position() };
+			for (int k = 0; k < sectionCount; k++) {
+				String algorithm = readString(map, position);
+				String permutation = readString(map, position);
+				int count = map.getInt(position[0]);
+				int hashesOffset = (int) map.getLong(position[0] + 4);
+				int recordsOffset = (int) map.getLong(position[0] + 12);
+				int heapOffset = (int) map.getLong(position[0] + 20);
+				int heapLength = (int) map.getLong(position[0] + 28);
+				position[0] += 36;
+				sections.add(new Section(algorithm, permutation, count,
+						slice(map, hashesOffset, count * 8).asLongBuffer(),
+						slice(map, recordsOffset, count * 4).asIntBuffer(), slice(map, heapOffset, heapLength)));
+			}
+		}
+
+		static HashIndex open(File file) throws IOException {
+			return new HashIndex(file);
+		}
+
+		boolean isStale() {
+			return file.lastModified() != lastModified || file.length() != length;
+		}
+
+		List<Section> getSections() {
+			return sections;
+		}
+
+		ArrayList<Entry> lookup(String algorithm, long hash) {
+			ArrayList<Entry> ret = new ArrayList<Entry>();
+			for (Section section : sections) {
+				if (!section.algorithm.equals(algorithm))
+					continue;
+				int index = section.find(hash);
+				if (index < 0)
+					continue;
+				for (; index < section.count && section.hashAt(index) == hash; index++) {
+					ret.add(section.entryAt(index));
+				}
+			}
+			return ret;
+		}
+
+		void exportTo(Writer writer) {
+			for (Section section : sections) {
+				for (int k = 0; k < section.count; k++) {
+					Entry entry = section.entryAt(k);
+					writer.add(section.algorithm, section.permutation, section.hashAt(k), entry.isApi, entry.name,
+							entry.modules);
+				}
+			}
+		}
+
+		private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset);
+			view.limit(offset + length);
+			return view.slice();
+		}
+
+		private static String readString(ByteBuffer buffer, int[] position) {
+			int length = buffer.getShort(position[0]) & 0xFFFF;
+			byte[] data = new byte[length];
+			for (int k = 0; k < length; k++) {
+				data[k] = buffer.get(position[0] + 2 + k);
+			}
+			position[0] += 2 + length;
+			return new String(data, StandardCharsets.UTF_8);
+		}
+
+		static class Writer {
+			private static class Record implements Comparable<Record> {
+				final long hash;
+				final boolean isApi;
+				final String name;
+				final String[] modules;
+
+				Record(long hash, boolean isApi, String name, String[] modules) {
+					this.hash = hash;
+					this.isApi = isApi;
+					this.name = name;
+					this.modules = modules;
+				}
+
+				@Override
+				public int compareTo(Record other) {
+					int diff = Long.compare(hash, other.hash);
+					return diff != 0 ? diff : name.compareTo(other.name);
+				}
+			}
+
+			private final TreeMap<String, TreeMap<String, HashMap<String, Record>>> sections = new TreeMap<>();
+			private int recordCount = 0;
+
+			public void add(String algorithm, String permutation, long hash, boolean isApi, String name,
+					String[] modules) {
+				HashMap<String, Record> section = sections.computeIfAbsent(algorithm, k -> new TreeMap<>())
+						.computeIfAbsent(permutation, k -> new HashMap<>());
+				if (section.putIfAbsent(String.format("%d/%s", hash, name),
+						new Record(hash, isApi, name, modules)) == null) {
+					recordCount++;
+				}
+			}
+
+			public int size() {
+				return recordCount;
+			}
+
+			public void write(File output) throws IOException {
+				ArrayList<String[]> keys = new ArrayList<String[]>();
+				ArrayList<Record[]> contents = new ArrayList<Record[]>();
+				long directorySize = 0;
+				for (String algorithm : sections.keySet()) {
+					for (Map.Entry<String, HashMap<String, Record>> section : sections.get(algorithm).entrySet()) {
+						Record[] records = section.getValue().values().toArray(new Record[0]);
+						Arrays.sort(records);
+						keys.add(new String[] { algorithm, section.getKey() });
+						contents.add(records);
+						directorySize += 4 + utf8(algorithm).length + utf8(section.getKey()).length + 36;
+					}
+				}
+
+				File temporary = new File(output.getPath() + ".tmp");
+				try (DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(temporary)))) {
+					out.write(MAGIC);
+					out.writeInt(keys.size());
+					long offset = MAGIC.length + 4 + directorySize;
+					ArrayList<byte[]> heaps = new ArrayList<byte[]>();
+					for (int k = 0; k < keys.size(); k++) {
+						Record[] records = contents.get(k);
+						byte[] heap = encodeHeap(records);
+						heaps.add(heap);
+						writeString(out, keys.get(k)[0]);
+						writeString(out, keys.get(k)[1]);
+						out.writeInt(records.length);
+						out.writeLong(offset);
+						out.writeLong(offset + 8L * records.length);
+						out.writeLong(offset + 12L * records.length);
+						out.writeLong(heap.length);
+						offset += 12L * records.length + heap.length;
+					}
+					if (offset > Integer.MAX_VALUE) {
+						throw new IOException("index would exceed 2GB");
+					}
+					for (int k = 0; k < keys.size(); k++) {
+						Record[] records = contents.get(k);
+						for (Record record : records) {
+							out.writeLong(record.hash);
+						}
+						int heapOffset = 0;
+						for (Record record : records) {
+							out.writeInt(heapOffset);
+							heapOffset += recordLength(record);
+						}
+						out.write(heaps.get(k));
+					}
+				}
+				Files.move(temporary.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+
+			private static byte[] utf8(String value) {
+				return value.getBytes(StandardCharsets.UTF_8);
+			}
+
+			private static int recordLength(Record record) {
+				int length = 1 + 2 + utf8(record.name).length + 2;
+				for (String module : record.modules) {
+					length += 2 + utf8(module).length;
+				}
+				return length;
+			}
+
+			private static byte[] encodeHeap(Record[] records) throws IOException {
+				java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(buffer);
+				for (Record record : records) {
+					if (record.modules.length > MAX_MODULES) {
+						throw new IOException(String.format("%s has %d modules, an index stores at most %d",
+								record.name, record.modules.length, MAX_MODULES));
+					}
+					out.writeByte(record.isApi ? 1 : 0);
+					writeString(out, record.name);
+					out.writeShort(record.modules.length);
+					for (String module : record.modules) {
+						writeString(out, module);
+					}
+				}
+				return buffer.toByteArray();
+			}
+
+			private static void writeString(DataOutputStream out, String value) throws IOException {
+				byte[] data = utf8(value);
+				out.writeShort(data.length);
+				out.write(data);
+			}
+		}
+	}
+
+	static Map<String, HashIndex> openHashIndexes = new HashMap<String, HashIndex>();
+
+	private List<HashIndex> getConfiguredIndexes() {
+		ArrayList<HashIndex> ret = new ArrayList<HashIndex>();
+		for (File file : getSettings().getIndexFiles()) {
+			synchronized (openHashIndexes) {
+				HashIndex index = openHashIndexes.get(file.getAbsolutePath());
+				if (index == null || index.isStale()) {
+					try {
+						index = HashIndex.open(file);
+					} catch (IOException e) {
+						logDebugMessage(String.format("unable to open index file %s", file), e);
+						continue;
+					}
+					openHashIndexes.put(file.getAbsolutePath(), index);
+				}
+				ret.add(index);
+			}
+		}
+		return ret;
+	}
+
+	private int exportIndex(File output) throws IOException {
+		HashIndex.Writer writer = new HashIndex.Writer();
+		for (HashIndex index : getConfiguredIndexes()) {
+			index.exportTo(writer);
+		}
+		resolutionCache.exportTo(writer);
+		writer.write(output);
+		return writer.size();
+	}
+
+	/*-
+	 * Computes the hashes of a whole dictionary of names for one algorithm at a time, so that local
+	 * hash -> name tables can be regenerated quickly. The names are packed into one byte array with
+	 * start and end offsets, each algorithm has its own loop over that array, and ranges of names are
+	 * hashed in parallel on the common fork-join pool. The result is a pair of primitive arrays
+	 * sorted by hash.
+	 */
+	static class BulkHasher {
+		static final String[] ALGORITHMS = { "crc32", "djb2", "fnv1a_32", "ror13_add", "sdbm" };
+		private static final int CHUNK_SIZE = 16384;
+		private static final int[] CRC32_TABLE = new int[256];
+
+		static {
+			for (int k = 0; k < 256; k++) {
+				int crc = k;
+				for (int bit = 0; bit < 8; bit++) {
+					crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xEDB88320 : crc >>> 1;
+				}
+				CRC32_TABLE[k] = crc;
+			}
+		}
+
+		static class Dictionary {
+			final byte[] bytes;
+			final int[] starts;
+			final int[] ends;
+			final int size;
+			private String[][] modules = null;
+
+			Dictionary(byte[] bytes, int[] starts, int[] ends, int size) {
+				this.bytes = bytes;
+				this.starts = starts;
+				this.ends = ends;
+				this.size = size;
+			}
+
+			static Dictionary of(List<String> names, String[][] modules) {
+				Dictionary ret = of(names);
+				ret.modules = modules;
+				return ret;
+			}
+
+			static Dictionary of(Collection<String> names) {
+				java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
+				int[] starts = new int[names.size()];
+				int[] ends = new int[names.size()];
+				int size = 0;
+				for (String name : names) {
+					byte[] data = name.getBytes(StandardCharsets.UTF_8);
+					starts[size] = buffer.size();
+					buffer.write(data, 0, data.length);
+					ends[size++] = buffer.size();
+				}
+				return new Dictionary(buffer.toByteArray(), starts, ends, size);
+			}
+
+			/**
+			 * Reads a text file with one name per line. The file contents are used as the packed
+			 * array directly; surrounding whitespace and empty lines are skipped.
+			 */
+			static Dictionary read(File file) throws IOException {
+				byte[] bytes = Files.readAllBytes(file.toPath());
+				int[] starts = new int[1024];
+				int[] ends = new int[1024];
+				int size = 0;
+				int position = 0;
+				while (position < bytes.length) {
+					int end = position;
+					while (end < bytes.length && bytes[end] != '\n')
+						end++;
+					int next = end + 1;
+					while (position < end && bytes[position] <= ' ')
+						position++;
+					while (end > position && bytes[end - 1] <= ' ')
+						end--;
+					if (end > position) {
+						if (size == starts.length) {
+							starts = Arrays.copyOf(starts, size * 2);
+							ends = Arrays.copyOf(ends, size * 2);
+						}
+						starts[size] = position;
+						ends[size++] = end;
+					}
+					position = next;
+				}
+				return new Dictionary(bytes, starts, ends, size);
+			}
+
+			String name(int index) {
+				return new String(bytes, starts[index], ends[index] - starts[index], StandardCharsets.UTF_8);
+			}
+
+			String[] modules(int index) {
+				return modules == null ? new String[0] : modules[index];
+			}
+		}
+
+		static class Table {
+			final String algorithm;
+			final long[] hashes;
+			final int[] names;
+
+			Table(String algorithm, long[] hashes, int[] names) {
+				this.algorithm = algorithm;
+				this.hashes = hashes;
+				this.names = names;
+			}
+
+			void addTo(HashIndex.Writer writer, Dictionary dictionary, String permutation) {
+				for (int k = 0; k < hashes.length; k++) {
+					writer.add(algorithm, permutation, hashes[k], true, dictionary.name(names[k]),
+							dictionary.modules(names[k]));
+				}
+			}
+		}
+
+		static boolean supports(String algorithm) {
+			return Arrays.asList(ALGORITHMS).contains(algorithm);
+		}
+
+		static Table hash(Dictionary dictionary, String algorithm) {
+			if (!supports(algorithm))
+				throw new IllegalArgumentException(String.format("unsupported algorithm: %s", algorithm));
+			int size = dictionary.size;
+			long[] packed = new long[size];
+			IntStream.range(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel().forEach(chunk -> {
+				int from = chunk * CHUNK_SIZE;
+				hashRange(algorithm, dictionary, from, Math.min(size, from + CHUNK_SIZE), packed);
+			});
+			// hashes are unsigned, so flip the sign bit to make the signed sort order them correctly
+			for (int k = 0; k < size; k++) {
+				packed[k] ^= Long.MIN_VALUE;
+			}
+			Arrays.parallelSort(packed);
+			long[] hashes = new long[size];
+			int[] names = new int[size];
+			for (int k = 0; k < size; k++) {
+				packed[k] ^= Long.MIN_VALUE;
+				hashes[k] = packed[k] >>> 32;
+				names[k] = (int) packed[k];
+			}
+			return new Table(algorithm, hashes, names);
+		}
+
+		/**
+		 * Stores (hash << 32 | index) for every name in the range, so that a single primitive sort
+		 * orders the table by hash and keeps the names attached.
+		 */
+		private static void hashRange(String algorithm, Dictionary dictionary, int from, int to, long[] packed) {
+			byte[] bytes = dictionary.bytes;
+			int[] starts = dictionary.starts;
+			int[] ends = dictionary.ends;
+			switch (algorithm) {
+			case "crc32":
+				for (int k = from; k < to; k++) {
+					int h = 0xFFFFFFFF;
+					for (int i = starts[k], end = ends[k]; i < end; i++) {
+						h = (h >>> 8) ^ CRC32_TABLE[(h ^ bytes[i]) & 0xFF];
+					}
+					packed[k] = ((~h) & 0xFFFFFFFFL) << 32 | k;
+				}
+				break;
+			case "djb2":
+				for (int k = from; k < to; k++) {
+					int h = 5381;
+					for (int i = starts[k], end = ends[k]; i < end; i++) {
+						h = h * 33 + (bytes[i] & 0xFF);
+					}
+					packed[k] = (h & 0xFFFFFFFFL) << 32 | k;
+				}
+				break;
+			case "fnv1a_32":
+				for (int k = from; k < to; k++) {
+					int h = 0x811C9DC5;
+					for (int i = starts[k], end = ends[k]; i < end; i++) {
+						h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+					}
+					packed[k] = (h & 0xFFFFFFFFL) << 32 | k;
+				}
+				break;
+			case "ror13_add":
+				for (int k = from; k < to; k++) {
+					int h = 0;
+					for (int i = starts[k], end = ends[k]; i < end; i++) {
+						h = Integer.rotateRight(h, 13) + (bytes[i] & 0xFF);
+					}
+					packed[k] = (h & 0xFFFFFFFFL) << 32 | k;
+				}
+				break;
+			case "sdbm":
+				for (int k = from; k < to; k++) {
+					int h = 0;
+					for (int i = starts[k], end = ends[k]; i < end; i++) {
+						h = (bytes[i] & 0xFF) + (h << 6) + (h << 16) - h;
+					}
+					packed[k] = (h & 0xFFFFFFFFL) << 32 | k;
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Headless entry point: hashes a dictionary file with the given algorithms and writes the
+	 * result as an index file that can be configured on the "Data Sources" tab.
+	 */
+	private void buildDictionaryIndex(String[] args) throws Exception {
+		File dictionaryFile = null;
+		File output = null;
+		List<String> algorithms = Arrays.asList(BulkHasher.ALGORITHMS);
+		for (int k = 1; k < args.length; k++) {
+			String[] option = args[k].split("=", 2);
+			if (option.length == 2 && option[0].equals("dictionary")) {
+				dictionaryFile = new File(option[1]);
+			} else if (option.length == 2 && option[0].equals("output")) {
+				output = new File(option[1]);
+			} else if (option.length == 2 && option[0].equals("algorithms")) {
+				algorithms = Arrays.asList(option[1].split(","));
+			} else {
+				throw new IllegalArgumentException(String.format("unknown index option: %s", args[k]));
+			}
+		}
+		if (dictionaryFile == null || output == null)
+			throw new IllegalArgumentException(
+					"usage: index dictionary=<names.txt or directory> output=<file> [algorithms=a,b]");
+
+		long start = System.nanoTime();
+		BulkHasher.Dictionary dictionary;
+		if (dictionaryFile.isDirectory()) {
+			dictionary = new NameDictionary(dictionaryFile).load();
+		} else {
+			dictionary = BulkHasher.Dictionary.read(dictionaryFile);
+		}
+		int entries = writeDictionaryIndex(dictionary, algorithms, output);
+		println(String.format("[HashDB] Wrote %d entries for %d names to %s in %.1f s", entries, dictionary.size,
+				output, (System.nanoTime() - start) / 1e9));
+	}
+
+	/*-
+	 * Directory of API name dictionary segments. Every source (a data type archive, the imports of a
+	 * program, an export list or a PE file) is written to its own segment file, so adding or updating
+	 * one source rewrites only that file. Segment layout (big endian):
+	 *
+	 *   "HDBDIC02" | source | long stamp | short moduleCount | moduleCount * module |
+	 *   int nameCount | nameCount * (name | short count | count * short module index)
+	 *
+	 * Strings are stored as short length + UTF-8. The stamp identifies the version of the source
+	 * (e.g. the modification time of a file) that the segment was built from.
+	 */
+	static class NameDictionary {
+		static final byte[] MAGIC = "HDBDIC02".getBytes(StandardCharsets.US_ASCII);
+		static final String SEGMENT_SUFFIX = ".seg";
+
+		static class Builder {
+			private final TreeMap<String, TreeSet<String>> names = new TreeMap<>();
+
+			void add(String name, String module) {
+				if (name == null || name.isBlank() || name.length() > 1024 || name.startsWith("Ordinal_"))
+					return;
+				TreeSet<String> modules = names.computeIfAbsent(name.trim(), k -> new TreeSet<String>());
+				if (module != null && !module.isBlank())
+					modules.add(normalizeModule(module));
+			}
+
+			int size() {
+				return names.size();
+			}
+		}
+
+		final File directory;
+
+		NameDictionary(File directory) {
+			this.directory = directory;
+		}
+
+		/**
+		 * HashDB names modules in lower case and without extension, e.g. "kernel32".
+		 */
+		static String normalizeModule(String module) {
+			String ret = new File(module.trim()).getName().toLowerCase();
+			int extension = ret.lastIndexOf('.');
+			return extension > 0 ? ret.substring(0, extension) : ret;
+		}
+
+		File segmentFile(String source) {
+			String readable = source.replaceAll("[^A-Za-z0-9._-]+", "_");
+			if (readable.length() > 48)
+				readable = readable.substring(readable.length() - 48);
+			return new File(directory, String.format("%s-%08x%s", readable, source.hashCode(), SEGMENT_SUFFIX));
+		}
+
+		boolean isCurrent(String source, long stamp) {
+			File file = segmentFile(source);
+			if (!file.isFile())
+				return false;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				byte[] magic = new byte[MAGIC.length];
+				in.readFully(magic);
+				return Arrays.equals(magic, MAGIC) && in.readUTF().equals(source) && in.readLong() == stamp;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		void writeSegment(String source, long stamp, Builder builder) throws IOException {
+			directory.mkdirs();
+			ArrayList<String> modules = new ArrayList<String>();
+			HashMap<String, Integer> moduleIndexes = new HashMap<String, Integer>();
+			for (TreeSet<String> nameModules : builder.names.values()) {
+				for (String module : nameModules) {
+					if (moduleIndexes.putIfAbsent(module, modules.size()) == null)
+						modules.add(module);
+				}
+			}
+			if (modules.size() > HashIndex.MAX_MODULES) {
+				throw new IOException(String.format("%s names %d modules, a segment stores at most %d", source,
+						modules.size(), HashIndex.MAX_MODULES));
+			}
+			File output = segmentFile(source);
+			File temporary = new File(output.getPath() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				out.write(MAGIC);
+				out.writeUTF(source);
+				out.writeLong(stamp);
+				out.writeShort(modules.size());
+				for (String module : modules) {
+					out.writeUTF(module);
+				}
+				out.writeInt(builder.names.size());
+				for (Map.Entry<String, TreeSet<String>> name : builder.names.entrySet()) {
+					out.writeUTF(name.getKey());
+					out.writeShort(name.getValue().size());
+					for (String module : name.getValue()) {
+						out.writeShort(moduleIndexes.get(module));
+					}
+				}
+			}
+			Files.move(temporary.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		File[] getSegmentFiles() {
+			File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+			if (files == null)
+				return new File[0];
+			Arrays.sort(files);
+			return files;
+		}
+
+		/**
+		 * Memory-maps all segments and merges them into one packed dictionary, deduplicating names
+		 * and merging their modules.
+		 */
+		BulkHasher.Dictionary load() throws IOException {
+			HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+			ArrayList<String> names = new ArrayList<String>();
+			ArrayList<TreeSet<String>> modules = new ArrayList<TreeSet<String>>();
+			for (File file : getSegmentFiles()) {
+				MappedByteBuffer map;
+				try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+					map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				}
+				byte[] magic = new byte[MAGIC.length];
+				map.get(magic);
+				if (!Arrays.equals(magic, MAGIC)) {
+					if (HashIndex.isOlderVersion(magic, MAGIC)) {
+						throw new IOException(
+								String.format("%s was written by an older version, add its source again", file));
+					}
+					throw new IOException(String.format("%s is not a HashDB dictionary segment", file));
+				}
+				int[] position = { map.position() };
+				HashIndex.readString(map, position);
+				position[0] += 8;
+				String[] segmentModules = new String[map.getShort(position[0]) & 0xFFFF];
+				position[0] += 2;
+				for (int k = 0; k < segmentModules.length; k++) {
+					segmentModules[k] = HashIndex.readString(map, position);
+				}
+				int count = map.getInt(position[0]);
+				position[0] += 4;
+				for (int k = 0; k < count; k++) {
+					String name = HashIndex.readString(map, position);
+					Integer index = indexes.putIfAbsent(name, names.size());
+					if (index == null) {
+						index = names.size();
+						names.add(name);
+						modules.add(new TreeSet<String>());
+					}
+					int moduleCount = map.getShort(position[0]) & 0xFFFF;
+					position[0] += 2;
+					for (int j = 0; j < moduleCount; j++) {
+						modules.get(index).add(segmentModules[map.getShort(position[0]) & 0xFFFF]);
+						position[0] += 2;
+					}
+				}
+			}
+			String[][] moduleArrays = new String[names.size()][];
+			for (int k = 0; k < moduleArrays.length; k++) {
+				moduleArrays[k] = modules.get(k).toArray(new String[0]);
+			}
+			return BulkHasher.Dictionary.of(names, moduleArrays);
+		}
+
+		/**
+		 * Adds the names of a text file with one export per line, either as "name" (the module is
+		 * taken from the file name), "module!name" or "module,name". Lines starting with '#' are
+		 * ignored.
+		 */
+		static void readExportList(File file, Builder builder) throws IOException {
+			String fallbackModule = normalizeModule(file.getName());
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] parts = line.split("[!,]", 2);
+				if (parts.length == 2) {
+					builder.add(parts[1].trim(), parts[0]);
+				} else {
+					builder.add(line, fallbackModule);
+				}
+			}
+		}
+
+		/**
+		 * Adds the exported names of a PE file, read from the export directory of the mapped file.
+		 */
+		static void readPeExports(File file, Builder builder) throws IOException {
+			MappedByteBuffer pe;
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				pe = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			pe.order(java.nio.ByteOrder.LITTLE_ENDIAN);
+			try {
+				int header = pe.getInt(0x3C);
+				if (pe.getInt(header) != 0x00004550)
+					throw new IOException(String.format("%s is not a PE file", file));
+				int sectionCount = pe.getShort(header + 6) & 0xFFFF;
+				int optional = header + 24;
+				int sections = optional + (pe.getShort(header + 20) & 0xFFFF);
+				boolean pe32Plus = (pe.getShort(optional) & 0xFFFF) == 0x20B;
+				int exportRva = pe.getInt(optional + (pe32Plus ? 112 : 96));
+				if (exportRva == 0)
+					return;
+				int exports = rvaToOffset(pe, sections, sectionCount, exportRva);
+				String module = readCString(pe, rvaToOffset(pe, sections, sectionCount, pe.getInt(exports + 12)));
+				if (module.isBlank())
+					module = file.getName();
+				int nameCount = pe.getInt(exports + 24);
+				int nameTable = rvaToOffset(pe, sections, sectionCount, pe.getInt(exports + 32));
+				for (int k = 0; k < nameCount; k++) {
+					builder.add(readCString(pe, rvaToOffset(pe, sections, sectionCount, pe.getInt(nameTable + 4 * k))),
+							module);
+				}
+			} catch (IndexOutOfBoundsException e) {
+				throw new IOException(String.format("%s has a truncated or malformed PE header", file));
+			}
+		}
+
+		static boolean isPeFile(File file) throws IOException {
+			try (InputStream in = new FileInputStream(file)) {
+				return in.read() == 'M' && in.read() == 'Z';
+			}
+		}
+
+		private static int rvaToOffset(ByteBuffer pe, int sections, int sectionCount, int rva) throws IOException {
+			for (int k = 0; k < sectionCount; k++) {
+				int section = sections + 40 * k;
+				int virtualAddress = pe.getInt(section + 12);
+				int size = Math.max(pe.getInt(section + 8), pe.getInt(section + 16));
+				if (Integer.compareUnsigned(rva - virtualAddress, size) < 0)
+					return rva - virtualAddress + pe.getInt(section + 20);
+			}
+			throw new IOException(String.format("RVA 0x%x is outside of all sections", rva));
+		}
+
+		private static String readCString(ByteBuffer buffer, int offset) {
+			int end = offset;
+			while (end < buffer.limit() && buffer.get(end) != 0)
+				end++;
+			byte[] data = new byte[end - offset];
+			for (int k = 0; k < data.length; k++) {
+				data[k] = buffer.get(offset + k);
+			}
+			return new String(data, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Adds the function names of the data type archives that the program references and the
+	 * imports of the program to the dictionary. Sources whose segment is up to date are skipped.
+	 *
+	 * @return the number of segments that were written.
+	 */
+	private int harvestProgramNames(NameDictionary dictionary) throws Exception {
+		int written = 0;
+		DataTypeManager dataTypeManager = currentProgram.getDataTypeManager();
+		DataTypeManagerService service = AutoAnalysisManager.getAnalysisManager(currentProgram)
+				.getDataTypeManagerService();
+		for (SourceArchive archive : dataTypeManager.getSourceArchives()) {
+			monitor.checkCanceled();
+			String source = String.format("archive:%s", archive.getName());
+			if (dictionary.isCurrent(source, archive.getLastSyncTime()))
+				continue;
+			DataTypeManager dtm;
+			try {
+				dtm = service.openDataTypeArchive(archive.getName());
+			} catch (Exception e) {
+				logDebugMessage(String.format("unable to open archive %s", archive.getName()), e);
+				continue;
+			}
+			if (dtm == null)
+				continue;
+			NameDictionary.Builder builder = new NameDictionary.Builder();
+			addFunctionDefinitions(dtm, builder);
+			dictionary.writeSegment(source, archive.getLastSyncTime(), builder);
+			written++;
+		}
+
+		String source = String.format("program:%s", currentProgram.getName());
+		long stamp = currentProgram.getModificationNumber();
+		if (!dictionary.isCurrent(source, stamp)) {
+			NameDictionary.Builder builder = new NameDictionary.Builder();
+			ExternalManager externals = currentProgram.getExternalManager();
+			for (String library : externals.getExternalLibraryNames()) {
+				String module = library.equals(Library.UNKNOWN) ? null : library;
+				ExternalLocationIterator locations = externals.getExternalLocations(library);
+				while (locations.hasNext()) {
+					builder.add(locations.next().getLabel(), module);
+				}
+			}
+			addFunctionDefinitions(dataTypeManager, builder);
+			dictionary.writeSegment(source, stamp, builder);
+			written++;
+		}
+		return written;
+	}
+
+	private void addFunctionDefinitions(DataTypeManager dtm, NameDictionary.Builder builder) {
+		Iterator<FunctionDefinition> definitions = dtm.getAllFunctionDefinitions();
+		while (definitions.hasNext()) {
+			builder.add(definitions.next().getName(), null);
+		}
+	}
+
+	/**
+	 * Adds export lists and PE files to the dictionary, one segment per file.
+	 *
+	 * @return the number of segments that were written.
+	 */
+	private int addDictionaryFiles(NameDictionary dictionary, List<File> files) throws Exception {
+		int written = 0;
+		for (File file : files) {
+			monitor.checkCanceled();
+			String source = String.format("file:%s", file.getAbsolutePath());
+			long stamp = file.lastModified() * 31 + file.length();
+			if (dictionary.isCurrent(source, stamp))
+				continue;
+			NameDictionary.Builder builder = new NameDictionary.Builder();
+			if (NameDictionary.isPeFile(file)) {
+				NameDictionary.readPeExports(file, builder);
+			} else {
+				NameDictionary.readExportList(file, builder);
+			}
+			dictionary.writeSegment(source, stamp, builder);
+			written++;
+		}
+		return written;
+	}
+
+	private int writeDictionaryIndex(BulkHasher.Dictionary dictionary, List<String> algorithms, File output)
+			throws Exception {
+		HashIndex.Writer writer = new HashIndex.Writer();
+		for (String algorithm : algorithms) {
+			monitor.checkCanceled();
+			monitor.setMessage(String.format("hashing %d names with %s", dictionary.size, algorithm));
+			BulkHasher.hash(dictionary, algorithm).addTo(writer, dictionary, "api");
+		}
+		writer.write(output);
+		return writer.size();
+	}
+
+	/*-
+	 * An open-addressing set of hash values that does not box, so that membership tests in the
+	 * transformation solver do not allocate. A bitmap over the low 24 bits of all values (2 MB)
+	 * rejects most absent values without touching the table.
+	 */
+	static class LongHashSet {
+		private static final long EMPTY = Long.MIN_VALUE;
+		private static final int FILTER_BITS = 24;
+
+		private final long[] table;
+		private final long[] filter = new long[1 << (FILTER_BITS - 6)];
+		private final int mask;
+		private int size = 0;
+
+		LongHashSet(int expectedSize) {
+			int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+			table = new long[capacity];
+			mask = capacity - 1;
+			Arrays.fill(table, EMPTY);
+		}
+
+		public boolean mightContain(long value) {
+			int bit = (int) value & ((1 << FILTER_BITS) - 1);
+			return (filter[bit >>> 6] & (1L << bit)) != 0;
+		}
+
+		private static int slot(long value) {
+			value ^= value >>> 33;
+			value *= 0xFF51AFD7ED558CCDL;
+			value ^= value >>> 33;
+			return (int) value;
+		}
+
+		public void add(long value) {
+			int bit = (int) value & ((1 << FILTER_BITS) - 1);
+			filter[bit >>> 6] |= 1L << bit;
+			int k = slot(value) & mask;
+			while (table[k] != EMPTY) {
+				if (table[k] == value)
+					return;
+				k = (k + 1) & mask;
+			}
+			table[k] = value;
+			size++;
+		}
+
+		public boolean contains(long value) {
+			if (!mightContain(value))
+				return false;
+			int k = slot(value) & mask;
+			long entry;
+			while ((entry = table[k]) != EMPTY) {
+				if (entry == value)
+					return true;
+				k = (k + 1) & mask;
+			}
+			return false;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		int capacity() {
+			return table.length;
+		}
+
+		/**
+		 * @return the value stored in the given slot, or {@link #EMPTY}.
+		 */
+		long slotValue(int k) {
+			return table[k];
+		}
+	}
+
+	/*-
+	 * Searches for a transformation that maps the raw hashes from the table to hashes known by an
+	 * algorithm. Every template is a fixed 32-bit function g followed by an XOR with a key and a mask,
+	 * i.e. (g(X) ^ K) & mask. Templates that nest several XOR constants, like the one used by REvil,
+	 * reduce to this form because the constants can be folded into a single key.
+	 *
+	 * For plain XOR, the entire key space is scanned. For all other templates, candidate keys are
+	 * derived from the first few table hashes under the assumption that one of them is known. Both
+	 * searches run on the fork-join pool and stop scoring a key as soon as it cannot beat the best
+	 * candidate found so far. The table hashes are shuffled, and a key is also dropped when it misses
+	 * the first 12 or most of the first 32 hashes. A key that maps half of all hashes passes these
+	 * tests with near certainty, while a random key is rejected after 12 lookups that mostly end in
+	 * the bitmap of the hash set. The full 2^32 XOR key space takes several minutes on a single core.
+	 */
+	static class TransformationSolver {
+		private static final int IDENTITY = 0;
+		private static final int ROTATE_LEFT = 1;
+		private static final int SHIFT_LEFT_XOR = 2;
+		private static final int SHIFT_RIGHT_XOR = 3;
+		private static final long[] MASKS = { 0xFFFFFFFFL, 0xFFFFFFL, 0x1FFFFFL, 0xFFFFL };
+		private static final int[] SHIFTS = { 4, 5, 7, 8, 13, 16 };
+		private static final int ANCHORS = 4;
+		private static final int LEAF_SIZE = 1 << 16;
+		private static final double MIN_HIT_RATE = 0.5;
+		private static final int FIRST_HIT_WITHIN = 12;
+		private static final int PROBE = 32;
+		private static final int PROBE_MISSES = 24;
+
+		static class Solution {
+			final String algorithm;
+			final String expression;
+			final String inverse;
+			final boolean selfInverse;
+			final int hits;
+			final int total;
+
+			Solution(String algorithm, String expression, String inverse, boolean selfInverse, int hits, int total) {
+				this.algorithm = algorithm;
+				this.expression = expression;
+				this.inverse = inverse;
+				this.selfInverse = selfInverse;
+				this.hits = hits;
+				this.total = total;
+			}
+		}
+
+		private static class Template {
+			final int kind;
+			final int parameter;
+			final long mask;
+
+			Template(int kind, int parameter, long mask) {
+				this.kind = kind;
+				this.parameter = parameter;
+				this.mask = mask;
+			}
+
+			long apply(long x) {
+				x &= 0xFFFFFFFFL;
+				switch (kind) {
+				case ROTATE_LEFT:
+					return ((x << parameter) | (x >>> (32 - parameter))) & 0xFFFFFFFFL;
+				case SHIFT_LEFT_XOR:
+					return ((x << parameter) ^ x) & 0xFFFFFFFFL;
+				case SHIFT_RIGHT_XOR:
+					return (x >>> parameter) ^ x;
+				default:
+					return x;
+				}
+			}
+
+			String expression(long key) {
+				String base;
+				switch (kind) {
+				case ROTATE_LEFT:
+					base = String.format("(((X << %d) | (X >> %d)) & 0xFFFFFFFF)", parameter, 32 - parameter);
+					break;
+				case SHIFT_LEFT_XOR:
+					base = String.format("((X << %d) ^ X)", parameter);
+					break;
+				case SHIFT_RIGHT_XOR:
+					base = String.format("((X >> %d) ^ X)", parameter);
+					break;
+				default:
+					base = "X";
+					break;
+				}
+				if (kind == IDENTITY && mask == 0xFFFFFFFFL)
+					return String.format("X ^ 0x%08X", key);
+				return String.format("(%s ^ 0x%X) & 0x%X", base, key, mask);
+			}
+
+			String inverse(long key) {
+				if (kind == ROTATE_LEFT) {
+					return String.format("((((X ^ 0x%08X) >> %d) | ((X ^ 0x%08X) << %d)) & 0xFFFFFFFF)", key, parameter,
+							key, 32 - parameter);
+				}
+				return null;
+			}
+
+			boolean isSelfInverse() {
+				return kind == IDENTITY && mask == 0xFFFFFFFFL;
+			}
+		}
+
+		private final long[] rawHashes;
+		private final TaskMonitor monitor;
+		private final AtomicInteger bestHits = new AtomicInteger();
+		private final ArrayList<Template> templates = new ArrayList<Template>();
+
+		TransformationSolver(long[] rawHashes, TaskMonitor monitor) {
+			this.rawHashes = Arrays.stream(rawHashes).map(hash -> hash & 0xFFFFFFFFL).distinct().toArray();
+			this.monitor = monitor;
+			java.util.Random random = new java.util.Random(0);
+			for (int k = this.rawHashes.length - 1; k > 0; k--) {
+				int j = random.nextInt(k + 1);
+				long swap = this.rawHashes[k];
+				this.rawHashes[k] = this.rawHashes[j];
+				this.rawHashes[j] = swap;
+			}
+			for (long mask : MASKS) {
+				templates.add(new Template(IDENTITY, 0, mask));
+			}
+			for (int rotation = 1; rotation < 32; rotation++) {
+				templates.add(new Template(ROTATE_LEFT, rotation, 0xFFFFFFFFL));
+			}
+			for (int shift : SHIFTS) {
+				for (long mask : MASKS) {
+					templates.add(new Template(SHIFT_LEFT_XOR, shift, mask));
+					templates.add(new Template(SHIFT_RIGHT_XOR, shift, mask));
+				}
+			}
+		}
+
+		public int getTemplateCount() {
+			return templates.size();
+		}
+
+		/**
+		 * @param hashSets the known hashes of every candidate algorithm.
+		 * @return the transformation with the most hits, or null if none reaches half of the hashes.
+		 */
+		public Solution solve(Map<String, LongHashSet> hashSets) throws CancelledException {
+			int n = rawHashes.length;
+			bestHits.set(Math.max(3, (int) Math.ceil(n * MIN_HIT_RATE)) - 1);
+			Solution best = null;
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			for (Template template : templates) {
+				long[] values = Arrays.stream(rawHashes).map(template::apply).toArray();
+				for (Map.Entry<String, LongHashSet> entry : hashSets.entrySet()) {
+					monitor.checkCanceled();
+					LongHashSet set = entry.getValue();
+					long result;
+					if (template.kind == IDENTITY) {
+						result = pool.invoke(new KeyRangeSearch(values, template.mask, set, 0, template.mask + 1));
+					} else {
+						long[] anchors = Arrays.copyOf(values, Math.min(ANCHORS, n));
+						result = pool
+								.invoke(new AnchoredSearch(values, template.mask, set, anchors, 0, set.capacity()));
+					}
+					int hits = (int) (result >>> 32);
+					if (hits > 0 && (best == null || hits > best.hits)) {
+						long key = result & 0xFFFFFFFFL;
+						best = new Solution(entry.getKey(), template.expression(key), template.inverse(key),
+								template.isSelfInverse(), hits, n);
+					}
+				}
+				monitor.incrementProgress(1);
+			}
+			return best;
+		}
+
+		/**
+		 * @return the number of values that map into the set, or -1 as soon as the key is rejected.
+		 */
+		private static int score(long[] values, long key, long mask, LongHashSet set, int maxMisses) {
+			int hits = 0;
+			int misses = 0;
+			for (int k = 0; k < values.length; k++) {
+				if (set.contains((values[k] ^ key) & mask)) {
+					hits++;
+				} else if (++misses > maxMisses || (k < PROBE && misses > PROBE_MISSES)
+						|| (hits == 0 && misses >= FIRST_HIT_WITHIN)) {
+					return -1;
+				}
+			}
+			return hits;
+		}
+
+		/**
+		 * Scores keys and returns the best as (hits << 32 | key), or 0 if no key beat the global best.
+		 */
+		private abstract class Search extends RecursiveTask<Long> {
+			final long[] values;
+			final long mask;
+			final LongHashSet set;
+			final long lo;
+			final long hi;
+
+			Search(long[] values, long mask, LongHashSet set, long lo, long hi) {
+				this.values = values;
+				this.mask = mask;
+				this.set = set;
+				this.lo = lo;
+				this.hi = hi;
+			}
+
+			abstract Search split(long lo, long hi);
+
+			abstract long scoreRange();
+
+			long scoreKey(long key, long best) {
+				int hits = score(values, key, mask, set, values.length - bestHits.get() - 1);
+				if (hits < 0 || hits <= (best >>> 32))
+					return best;
+				bestHits.accumulateAndGet(hits, Math::max);
+				return ((long) hits << 32) | key;
+			}
+
+			@Override
+			protected Long compute() {
+				if (monitor.isCancelled())
+					return 0L;
+				if (hi - lo <= LEAF_SIZE)
+					return scoreRange();
+				long mid = (lo + hi) >>> 1;
+				Search left = split(lo, mid);
+				left.fork();
+				long right = split(mid, hi).compute();
+				long leftResult = left.join();
+				return (leftResult >>> 32) >= (right >>> 32) ? leftResult : right;
+			}
+		}
+
+		private class KeyRangeSearch extends Search {
+			KeyRangeSearch(long[] values, long mask, LongHashSet set, long lo, long hi) {
+				super(values, mask, set, lo, hi);
+			}
+
+			@Override
+			Search split(long lo, long hi) {
+				return new KeyRangeSearch(values, mask, set, lo, hi);
+			}
+
+			@Override
+			long scoreRange() {
+				long best = 0;
+				for (long key = lo; key < hi; key++) {
+					best = scoreKey(key, best);
+				}
+				return best;
+			}
+		}
+
+		private class AnchoredSearch extends Search {
+			private final long[] anchors;
+
+			AnchoredSearch(long[] values, long mask, LongHashSet set, long[] anchors, long lo, long hi) {
+				super(values, mask, set, lo, hi);
+				this.anchors = anchors;
+			}
+
+			@Override
+			Search split(long lo, long hi) {
+				return new AnchoredSearch(values, mask, set, anchors, lo, hi);
+			}
+
+			@Override
+			long scoreRange() {
+				long best = 0;
+				for (int k = (int) lo; k < hi; k++) {
+					long known = set.slotValue(k);
+					if (known == LongHashSet.EMPTY)
+						continue;
+					for (long anchor : anchors) {
+						best = scoreKey((anchor ^ known) & mask, best);
+					}
+				}
+				return best;
+			}
+		}
+	}
+
+	/**
+	 * @param algorithm restricts the result to this algorithm unless it is null.
+	 * @return the hashes in the configured index files, per algorithm.
+	 */
+	private Map<String, LongHashSet> getKnownHashes(String algorithm) {
+		LinkedHashMap<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		List<HashIndex> indexes = getConfiguredIndexes();
+		for (HashIndex index : indexes) {
+			for (HashIndex.Section section : index.getSections()) {
+				if (algorithm == null || section.algorithm.equals(algorithm))
+					counts.merge(section.algorithm, section.count, Integer::sum);
+			}
+		}
+		LinkedHashMap<String, LongHashSet> ret = new LinkedHashMap<String, LongHashSet>();
+		for (HashIndex index : indexes) {
+			for (HashIndex.Section section : index.getSections()) {
+				if (!counts.containsKey(section.algorithm))
+					continue;
+				LongHashSet set = ret.computeIfAbsent(section.algorithm, a -> new LongHashSet(counts.get(a)));
+				for (int k = 0; k < section.count; k++) {
+					set.add(section.hashAt(k));
+				}
+			}
+		}
+		return ret;
+	}
+
+	private class HashTableExecutor implements TableChooserExecutor {
+		public HashTableExecutor() {
+
+		}
+
+		@Override
+		public String getButtonName() {
+			return "Query!";
+		}
+
+		@Override
+		public boolean execute(AddressableRowObject rowObject) {
+			return false;
+		}
+
+	}
+
+	public enum TransformInvertibility {
+		NotInvertible, SelfInverse, Manual
+	}
+
+	public class GuiState {
+		public TransformInvertibility transformInvertibility;
+
+		public GuiState(TransformInvertibility transformInvertibility) {
+			this.transformInvertibility = transformInvertibility;
+		}
+	}
+
+	public enum OutputMethod {
+		Enum, Struct
+	}
+
+	public enum LogLevel {
+		Debug, Info, Warning, Error
+	}
+
+	/*-
+	 * Leveled logger that keeps console output off the hot paths. Messages are put into a bounded,
+	 * lock-free ring buffer (multiple producers claim slots with a CAS on the head) and printed by a
+	 * daemon thread, which exits when the buffer stays empty and is restarted by the next message.
+	 * Messages that would repeat per hash or call site are counted with count() and printed as one
+	 * line when the run ends. During a run, all messages are also appended to the log file if one
+	 * is configured, regardless of the console level.
+	 */
+	static class Logger {
+		private static final int CAPACITY = 1 << 14;
+		private static final long IDLE_NANOS = 1000000000L;
+
+		private static class Entry {
+			final LogLevel level;
+			final String message;
+
+			Entry(LogLevel level, String message) {
+				this.level = level;
+				this.message = message;
+			}
+		}
+
+		private final java.util.function.Consumer<String> console;
+		private final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<Entry>(CAPACITY);
+		private final AtomicLong head = new AtomicLong();
+		private final AtomicLong tail = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private final AtomicBoolean draining = new AtomicBoolean();
+		private final Map<String, AtomicLong> aggregates = new ConcurrentHashMap<String, AtomicLong>();
+		private volatile LogLevel level = LogLevel.Info;
+		private volatile PrintWriter file = null;
+
+		Logger(java.util.function.Consumer<String> console) {
+			this.console = console;
+		}
+
+		/**
+		 * Applies the level and opens the log file of a run; the file is closed by {@link #endRun}.
+		 */
+		synchronized void startRun(String name, LogLevel level, File logFile) {
+			this.level = level;
+			if (logFile == null)
+				return;
+			try {
+				if (logFile.getParentFile() != null)
+					logFile.getParentFile().mkdirs();
+				file = new PrintWriter(new java.io.BufferedWriter(new java.io.FileWriter(logFile, true)));
+				file.println(String.format("=== %s %s ===", name, java.time.LocalDateTime.now()));
+			} catch (IOException e) {
+				log(LogLevel.Warning, String.format("unable to open log file %s: %s", logFile, e.getMessage()));
+			}
+		}
+
+		synchronized void endRun() {
+			for (String format : new ArrayList<String>(aggregates.keySet())) {
+				AtomicLong count = aggregates.remove(format);
+				if (count != null)
+					log(LogLevel.Info, String.format(format, count.get()));
+			}
+			flush();
+			if (file != null) {
+				file.close();
+				file = null;
+			}
+		}
+
+		boolean isEnabled(LogLevel messageLevel) {
+			return messageLevel.compareTo(level) >= 0 || file != null;
+		}
+
+		void log(LogLevel messageLevel, String message) {
+			if (!isEnabled(messageLevel))
+				return;
+			Entry entry = new Entry(messageLevel, message);
+			while (true) {
+				long ticket = head.get();
+				if (ticket - tail.get() >= CAPACITY) {
+					dropped.incrementAndGet();
+					break;
+				}
+				if (head.compareAndSet(ticket, ticket + 1)) {
+					ring.set((int) (ticket & (CAPACITY - 1)), entry);
+					break;
+				}
+			}
+			if (!draining.get() && draining.compareAndSet(false, true)) {
+				Thread drainer = new Thread(this::drain, "HashDB logger");
+				drainer.setDaemon(true);
+				drainer.start();
+			}
+		}
+
+		/**
+		 * Counts an occurrence of a repetitive event; the format receives the count when the run ends,
+		 * e.g. "%d hashes had no match.".
+		 */
+		void count(String format) {
+			aggregates.computeIfAbsent(format, k -> new AtomicLong()).incrementAndGet();
+		}
+
+		/**
+		 * Waits (up to a second) until everything logged so far has been printed.
+		 */
+		void flush() {
+			long target = head.get();
+			long deadline = System.nanoTime() + 1000000000L;
+			while (tail.get() < target && System.nanoTime() < deadline) {
+				if (!draining.get())
+					drainOnce();
+				LockSupport.parkNanos(1000000L);
+			}
+			PrintWriter out = file;
+			if (out != null)
+				out.flush();
+		}
+
+		private void drain() {
+			long idleSince = System.nanoTime();
+			while (true) {
+				if (drainOnce()) {
+					idleSince = System.nanoTime();
+				} else if (System.nanoTime() - idleSince > IDLE_NANOS) {
+					draining.set(false);
+					if (tail.get() == head.get() || !draining.compareAndSet(false, true))
+						return;
+				} else {
+					LockSupport.parkNanos(2000000L);
+				}
+			}
+		}
+
+		private synchronized boolean drainOnce() {
+			boolean printed = false;
+			long lost = dropped.getAndSet(0);
+			if (lost > 0)
+				write(new Entry(LogLevel.Warning, String.format("%d log messages were dropped", lost)));
+			while (tail.get() < head.get()) {
+				int slot = (int) (tail.get() & (CAPACITY - 1));
+				Entry entry = ring.getAndSet(slot, null);
+				if (entry == null)
+					break; // claimed, but not written yet
+				tail.incrementAndGet();
+				write(entry);
+				printed = true;
+			}
+			PrintWriter out = file;
+			if (printed && out != null)
+				out.flush();
+			return printed;
+		}
+
+		private void write(Entry entry) {
+			if (entry.level.compareTo(level) >= 0)
+				console.accept(String.format("[HashDB] %s", entry.message));
+			PrintWriter out = file;
+			if (out != null)
+				out.println(String.format("%s %-7s %s", java.time.LocalTime.now(), entry.level, entry.message));
+		}
+	}
+
+	/*-
+	 * The settings a resolution run reads and updates. The dialog implements them for interactive
+	 * use; headless runs such as the end-to-end benchmark use HeadlessSettings instead.
+	 */
+	interface ResolutionSettings {
+		String getTransformation();
+
+		String getTransformationInverse() throws IllegalStateException;
+
+		boolean isTransformationInvertible();
+
+		void setTransformationNotInvertible();
+
+		String getCurrentHashAlgorithm();
+
+		void addNewHashAlgorithm(String algorithm, boolean selectIt);
+
+		double getAlgorithmThreshold();
+
+		String getCurrentPermutation();
+
+		void addNewPermutation(String permutation, boolean selectIt);
+
+		boolean resolveEntireModules();
+
+		boolean narrowModuleExpansion();
+
+		/**
+		 * @return whether hashes are resolved in the background as soon as they are added.
+		 */
+		boolean prefetchResolutions();
+
+		OutputMethod getOutputMethod() throws IllegalStateException;
+
+		String getStorageName();
+
+		String getNonApiEnumName();
+
+		String getServiceUrl();
+
+		int getHuntConcurrency();
+
+		boolean hedgeRequests();
+
+		LogLevel getLogLevel();
+
+		/**
+		 * @return the file that each run appends its log to, or null.
+		 */
+		File getLogFile();
+
+		boolean isHttpDebugging();
+
+		boolean isGuiDebugging();
+
+		boolean isPyDebugging();
+
+		List<File> getIndexFiles();
+	}
+
+	static class HeadlessSettings implements ResolutionSettings {
+		String transformation = STOCK_TRANSFORMATIONS[0];
+		String transformationInverse = STOCK_TRANSFORMATIONS[0];
+		boolean transformationInvertible = true;
+		String algorithm = null;
+		double algorithmThreshold = 1.0;
+		String permutation = null;
+		boolean resolveEntireModules = false;
+		boolean narrowModuleExpansion = false;
+		boolean prefetchResolutions = false;
+		OutputMethod outputMethod = OutputMethod.Enum;
+		String storageName = "HashDBEnum";
+		String nonApiEnumName = "HashDBStrings";
+		String serviceUrl = DEFAULT_SERVICE_URL;
+		int huntConcurrency = DEFAULT_HUNT_CONCURRENCY;
+		boolean hedgeRequests = false;
+		LogLevel logLevel = LogLevel.Info;
+		File logFile = null;
+		boolean httpDebugging = false;
+		boolean guiDebugging = false;
+		boolean pyDebugging = false;
+		List<File> indexFiles = new ArrayList<File>();
+
+		public String getTransformation() {
+			return transformation;
+		}
+
+		public String getTransformationInverse() throws IllegalStateException {
+			if (!transformationInvertible)
+				throw new IllegalStateException();
+			return transformationInverse;
+		}
+
+		public boolean isTransformationInvertible() {
+			return transformationInvertible;
+		}
+
+		public void setTransformationNotInvertible() {
+			transformationInvertible = false;
+		}
+
+		public String getCurrentHashAlgorithm() {
+			return algorithm;
+		}
+
+		public void addNewHashAlgorithm(String algorithm, boolean selectIt) {
+			if (selectIt)
+				this.algorithm = algorithm;
+		}
+
+		public double getAlgorithmThreshold() {
+			return algorithmThreshold;
+		}
+
+		public String getCurrentPermutation() {
+			return permutation;
+		}
+
+		public void addNewPermutation(String permutation, boolean selectIt) {
+			if (selectIt)
+				this.permutation = permutation;
+		}
+
+		public boolean resolveEntireModules() {
+			return resolveEntireModules;
+		}
+
+		public boolean narrowModuleExpansion() {
+			return narrowModuleExpansion;
+		}
+
+		public boolean prefetchResolutions() {
+			return prefetchResolutions;
+		}
+
+		public OutputMethod getOutputMethod() {
+			return outputMethod;
+		}
+
+		public String getStorageName() {
+			return storageName;
+		}
+
+		public String getNonApiEnumName() {
+			return nonApiEnumName;
+		}
+
+		public String getServiceUrl() {
+			return serviceUrl;
+		}
+
+		public int getHuntConcurrency() {
+			return huntConcurrency;
+		}
+
+		public boolean hedgeRequests() {
+			return hedgeRequests;
+		}
+
+		public LogLevel getLogLevel() {
+			return logLevel;
+		}
+
+		public File getLogFile() {
+			return logFile;
+		}
+
+		public boolean isHttpDebugging() {
+			return httpDebugging;
+		}
+
+		public boolean isGuiDebugging() {
+			return guiDebugging;
+		}
+
+		public boolean isPyDebugging() {
+			return pyDebugging;
+		}
+
+		public List<File> getIndexFiles() {
+			return indexFiles;
+		}
+	}
+
+	class HashTable extends TableChooserDialog implements ResolutionSettings {
+		private JTextField enumNameTextField;
+		private JTextField nonApiResolutionEnumName;
+		private JTextField transformationInverseTextField;
+		private JComboBox<String> transformationTextField;
+		private JComboBox<String> hashAlgorithmField;
+		private JComboBox<String> permutationField;
+		private JTextField hashAlgorithmThresholdField;
+		private GCheckBox resolveModulesCheckbox;
+		private GCheckBox narrowModulesCheckbox;
+		private GCheckBox prefetchCheckbox;
+		private JTextField crawlFunctionName;
+		private JSpinner crawlParameterIndex;
+		private SpinnerNumberModel crawlParameterIndexModel;
+		private JTextField indexFilesTextField;
+		private JTextField serviceUrlTextField;
+		private JSpinner huntConcurrencySpinner;
+		private GCheckBox hedgeRequestsCheckbox;
+		private JComboBox<LogLevel> logLevelField;
+		private JTextField logFileTextField;
+		private GCheckBox httpDebuggingCheckbox;
+		private GCheckBox guiDebuggingCheckbox;
+		private GCheckBox pyDebuggingCheckbox;
+		private JTextField dictionaryDirectoryTextField;
+
+		private GCheckBox transformationIsSelfInverseCheckbox;
+		private GCheckBox transformationIsNotInvertibleCheckbox;
+
+		private JRadioButton outputStructRadio;
+		private JRadioButton outputEnumRadio;
+
+		private final Program targetProgram;
+		private final Timer stateSaveTimer;
+		// set while a query, scan, solve or resume runs, see claimWindow()
+		private final AtomicBoolean querying = new AtomicBoolean();
+		private final Prefetcher prefetcher = new Prefetcher();
+
+		public HashTable(PluginTool tool, TableChooserExecutor executor, Program program, String title) {
+			super(tool, executor, program, title, null, false);
+			this.targetProgram = program;
+			setFocusComponent(okButton);
+			okButton.setMnemonic('Q');
+			JButton resumeButton = new JButton("Resume Last Run");
+			resumeButton.setToolTipText("Continue the last query on this program that was canceled or interrupted; "
+					+ "hashes it already resolved are not looked up again.");
+			resumeButton.addActionListener(e -> resumeLastRun());
+			addButton(resumeButton);
+			stateSaveTimer = new Timer(1000, e -> saveState());
+			stateSaveTimer.setRepeats(false);
+		}
+
+		public Program getTargetProgram() {
+			return targetProgram;
+		}
+
+		/**
+		 * Restores the settings and the rows of an interrupted query from its journal, puts everything
+		 * it resolved into the resolution cache and queries the rows of that run again.
+		 */
+		private void resumeLastRun() {
+			if (!claimWindow())
+				return;
+			final class Resumer extends SwingWorker<RunJournal.Checkpoint, Object> {
+				@Override
+				protected RunJournal.Checkpoint doInBackground() throws Exception {
+					RunJournal.Checkpoint checkpoint = RunJournal.read(RunJournal.fileFor(targetProgram));
+					if (checkpoint == null)
+						return null;
+					String algorithm = checkpoint.settings.get("algorithm").getAsString();
+					HashDBApi api = new HashDBApi();
+					for (Map.Entry<Long, JsonObject> entry : checkpoint.hashes.entrySet()) {
+						resolutionCache.putHash(algorithm, entry.getKey(), api.parseHashInfoFromJson(entry.getValue()));
+					}
+					for (JsonObject module : checkpoint.modules.values()) {
+						resolutionCache.putModule(module.get("module").getAsString(), algorithm,
+								module.get("permutation").getAsString(), api.parseHashInfoFromJson(module));
+					}
+					HashSet<Long> present = new HashSet<Long>();
+					for (HashLocation row : getAllRows()) {
+						present.add(row.getHashAsLong());
+					}
+					for (Map.Entry<Long, String> row : checkpoint.rows.entrySet()) {
+						if (present.contains(row.getKey()))
+							continue;
+						Address address = row.getValue() == null ? null
+								: targetProgram.getAddressFactory().getAddress(row.getValue());
+						add(new HashLocation(address, row.getKey()));
+					}
+					waitUntilIdle();
+					return checkpoint;
+				}
+
+				@Override
+				protected void done() {
+					RunJournal.Checkpoint checkpoint;
+					try {
+						checkpoint = get();
+					} catch (InterruptedException | ExecutionException e) {
+						logDebugMessage("Unable to resume the last run:", e);
+						setStatusText("Unable to resume the last run, see log");
+						return;
+					} finally {
+						// released before the query below claims the window again
+						querying.set(false);
+					}
+					if (checkpoint == null) {
+						setStatusText("There is no interrupted run to resume.");
+						return;
+					}
+					importSettings(checkpoint.settings);
+					ArrayList<HashLocation> rows = getAllRows();
+					selectRows(IntStream.range(0, rows.size())
+							.filter(i -> checkpoint.rows.containsKey(rows.get(i).getHashAsLong())).toArray());
+					logDebugMessage(String.format("Resuming a run of %d hashes, %d of which were resolved before.",
+							checkpoint.rows.size(), checkpoint.hashes.size()));
+					okCallback();
+				}
+			}
+
+			new Resumer().execute();
+		}
+
+		/**
+		 * Claims the window for a query, scan, solve or resume. They share the task monitor and the
+		 * settings fields, so only one of them runs at a time.
+		 *
+		 * @return false, after telling the user, if another one is running.
+		 */
+		private boolean claimWindow() {
+			if (querying.compareAndSet(false, true))
+				return true;
+			setStatusText("HashDB is already busy with this program.");
+			return false;
+		}
+
+		public void scheduleStateSave() {
+			stateSaveTimer.restart();
+		}
+
+		public void saveState() {
+			stateSaveTimer.stop();
+			if (targetProgram.isClosed())
+				return;
+			try {
+				new ProgramStateStore(targetProgram).saveTable(this);
+			} catch (Exception e) {
+				logDebugMessage("Unable to store HashDB state in program:", e);
+			}
+		}
+
+		private void solveTransformation() {
+			long[] rawHashes = getAllRows().stream().mapToLong(HashLocation::getHashAsLong).toArray();
+			String algorithm = getCurrentHashAlgorithm();
+			if (rawHashes.length < 3) {
+				setStatusText("The solver needs at least three hashes in the table.");
+				return;
+			}
+			if (!claimWindow())
+				return;
+			TaskMonitor taskMonitor = getTaskMonitorComponent();
+			TransformationSolver solver = new TransformationSolver(rawHashes, taskMonitor);
+			taskMonitor.initialize(solver.getTemplateCount());
+			showProgressBar("Solving transformation", true, true, 0);
+
+			final class Solver extends SwingWorker<TransformationSolver.Solution, Object> {
+				@Override
+				protected TransformationSolver.Solution doInBackground() throws Exception {
+					// loading the index files can take a while, so it stays off the event dispatch thread
+					Map<String, LongHashSet> knownHashes = getKnownHashes(algorithm);
+					if (knownHashes.isEmpty())
+						throw new ShowErrorInUi(
+								"The solver needs index files with the candidate algorithms, see \"Data Sources\".");
+					return solver.solve(knownHashes);
+				}
+
+				@Override
+				protected void done() {
+					try {
+						hideTaskMonitorComponent();
+						TransformationSolver.Solution solution;
+						try {
+							solution = get();
+						} catch (InterruptedException | ExecutionException e) {
+							if (e.getCause() instanceof ShowErrorInUi) {
+								setStatusText(e.getCause().getMessage());
+								return;
+							}
+							if (!(e.getCause() instanceof CancelledException))
+								logDebugMessage("Error while solving transformation", e);
+							setStatusText("no transformation found");
+							return;
+						}
+						if (solution == null) {
+							setStatusText("No transformation maps at least half of the hashes to known hashes.");
+							return;
+						}
+						addToComboBox(transformationTextField, String.format("%s  # solved for %s", solution.expression,
+								solution.algorithm), true);
+						transformationIsSelfInverseCheckbox.setSelected(solution.selfInverse);
+						transformationIsNotInvertibleCheckbox
+								.setSelected(!solution.selfInverse && solution.inverse == null);
+						if (solution.inverse != null)
+							transformationInverseTextField.setText(solution.inverse);
+						enableComponentsAccordingToState(getCurrentState());
+						addNewHashAlgorithm(solution.algorithm, true);
+						scheduleStateSave();
+						setStatusText(String.format("Found transformation for %s matching %d of %d hashes.",
+								solution.algorithm, solution.hits, solution.total));
+					} finally {
+						querying.set(false);
+					}
+				}
+			}
+			new Solver().execute();
+		}
+
+		/**
+		 * Reads the rows straight from the table model, leaving the user's selection alone. Off the
+		 * event dispatch thread this first waits for pending additions to reach the table.
+		 */
+		public ArrayList<HashLocation> getAllRows() {
+			ArrayList<HashLocation> rows = new ArrayList<HashLocation>();
+			Runnable collect = () -> {
+				JTable table = findTable(getComponent());
+				if (table == null || !(table.getModel() instanceof RowObjectTableModel))
+					return;
+				RowObjectTableModel<?> model = (RowObjectTableModel<?>) table.getModel();
+				for (int row = 0; row < model.getRowCount(); row++) {
+					Object rowObject = model.getRowObject(row);
+					if (rowObject instanceof HashLocation)
+						rows.add((HashLocation) rowObject);
+				}
+			};
+			if (SwingUtilities.isEventDispatchThread()) {
+				collect.run();
+			} else {
+				waitUntilIdle();
+				try {
+					SwingUtilities.invokeAndWait(collect);
+				} catch (InterruptedException | InvocationTargetException e) {
+					logDebugMessage("Unable to read the table rows:", e);
+				}
+			}
+			return rows;
+		}
+
+		/**
+		 * @return the hashes of the rows that are currently scrolled into view.
+		 */
+		public Set<Long> getVisibleHashes() {
+			HashSet<Long> visible = new HashSet<Long>();
+			Runnable collect = () -> {
+				JTable table = findTable(getComponent());
+				if (table == null || !(table.getModel() instanceof RowObjectTableModel))
+					return;
+				Rectangle view = table.getVisibleRect();
+				int first = table.rowAtPoint(view.getLocation());
+				int last = table.rowAtPoint(new Point(view.x, view.y + view.height - 1));
+				if (first < 0)
+					return;
+				if (last < 0)
+					last = table.getRowCount() - 1;
+				RowObjectTableModel<?> model = (RowObjectTableModel<?>) table.getModel();
+				for (int row = first; row <= last; row++) {
+					Object rowObject = model.getRowObject(row);
+					if (rowObject instanceof HashLocation)
+						visible.add(((HashLocation) rowObject).getHashAsLong());
+				}
+			};
+			if (SwingUtilities.isEventDispatchThread()) {
+				collect.run();
+			} else {
+				try {
+					SwingUtilities.invokeAndWait(collect);
+				} catch (InterruptedException | InvocationTargetException e) {
+					logDebugMessage("Unable to determine the visible rows:", e);
+				}
+			}
+			return visible;
+		}
+
+		private JTable findTable(Component component) {
+			if (component instanceof JTable)
+				return (JTable) component;
+			if (component instanceof Container) {
+				for (Component child : ((Container) component).getComponents()) {
+					JTable table = findTable(child);
+					if (table != null)
+						return table;
+				}
+			}
+			return null;
+		}
+
+		public JsonObject exportSettings() {
+			JsonObject settings = new JsonObject();
+			settings.addProperty("transformation", getTransformation());
+			settings.addProperty("transformationInverse", transformationInverseTextField.getText());
+			settings.addProperty("transformationInvertibility", getCurrentState().transformInvertibility.name());
+			settings.addProperty("algorithm", getCurrentHashAlgorithm());
+			settings.addProperty("algorithmThreshold", getAlgorithmThreshold());
+			settings.addProperty("permutation", getCurrentPermutation());
+			settings.addProperty("resolveEntireModules", resolveEntireModules());
+			settings.addProperty("narrowModuleExpansion", narrowModuleExpansion());
+			settings.addProperty("prefetchResolutions", prefetchResolutions());
+			settings.addProperty("outputMethod", getOutputMethod().name());
+			settings.addProperty("storageName", getStorageName());
+			settings.addProperty("nonApiEnumName", getNonApiEnumName());
+			settings.addProperty("indexFiles", indexFilesTextField.getText());
+			settings.addProperty("serviceUrl", getServiceUrl());
+			settings.addProperty("huntConcurrency", getHuntConcurrency());
+			settings.addProperty("hedgeRequests", hedgeRequests());
+			settings.addProperty("logLevel", getLogLevel().name());
+			settings.addProperty("logFile", logFileTextField.getText());
+			settings.addProperty("httpDebugging", isHttpDebugging());
+			settings.addProperty("guiDebugging", isGuiDebugging());
+			settings.addProperty("pyDebugging", isPyDebugging());
+			settings.addProperty("dictionaryDirectory", dictionaryDirectoryTextField.getText());
+			return settings;
+		}
+
+		public void importSettings(JsonObject settings) {
+			if (settings.has("transformation"))
+				addToComboBox(transformationTextField, settings.get("transformation").getAsString(), true);
+			if (settings.has("transformationInverse"))
+				transformationInverseTextField.setText(settings.get("transformationInverse").getAsString());
+			if (settings.has("transformationInvertibility")) {
+				TransformInvertibility invertibility = TransformInvertibility
+						.valueOf(settings.get("transformationInvertibility").getAsString());
+				transformationIsNotInvertibleCheckbox.setSelected(invertibility == TransformInvertibility.NotInvertible);
+				transformationIsSelfInverseCheckbox.setSelected(invertibility == TransformInvertibility.SelfInverse);
+			}
+			if (settings.has("algorithm"))
+				addNewHashAlgorithm(settings.get("algorithm").getAsString(), true);
+			if (settings.has("algorithmThreshold"))
+				hashAlgorithmThresholdField
+						.setText(String.format("%.1f", settings.get("algorithmThreshold").getAsDouble()));
+			if (settings.has("permutation"))
+				addNewPermutation(settings.get("permutation").getAsString(), true);
+			if (settings.has("resolveEntireModules"))
+				resolveModulesCheckbox.setSelected(settings.get("resolveEntireModules").getAsBoolean());
+			if (settings.has("narrowModuleExpansion"))
+				narrowModulesCheckbox.setSelected(settings.get("narrowModuleExpansion").getAsBoolean());
+			if (settings.has("prefetchResolutions"))
+				prefetchCheckbox.setSelected(settings.get("prefetchResolutions").getAsBoolean());
+			if (settings.has("outputMethod")) {
+				boolean struct = OutputMethod.valueOf(settings.get("outputMethod").getAsString()) == OutputMethod.Struct;
+				outputStructRadio.setSelected(struct);
+				outputEnumRadio.setSelected(!struct);
+			}
+			if (settings.has("storageName"))
+				enumNameTextField.setText(settings.get("storageName").getAsString());
+			if (settings.has("nonApiEnumName"))
+				nonApiResolutionEnumName.setText(settings.get("nonApiEnumName").getAsString());
+			if (settings.has("indexFiles"))
+				indexFilesTextField.setText(settings.get("indexFiles").getAsString());
+			if (settings.has("serviceUrl"))
+				serviceUrlTextField.setText(settings.get("serviceUrl").getAsString());
+			if (settings.has("huntConcurrency"))
+				huntConcurrencySpinner.setValue(settings.get("huntConcurrency").getAsInt());
+			if (settings.has("hedgeRequests"))
+				hedgeRequestsCheckbox.setSelected(settings.get("hedgeRequests").getAsBoolean());
+			if (settings.has("logLevel"))
+				logLevelField.setSelectedItem(LogLevel.valueOf(settings.get("logLevel").getAsString()));
+			if (settings.has("logFile"))
+				logFileTextField.setText(settings.get("logFile").getAsString());
+			if (settings.has("httpDebugging"))
+				httpDebuggingCheckbox.setSelected(settings.get("httpDebugging").getAsBoolean());
+			if (settings.has("guiDebugging"))
+				guiDebuggingCheckbox.setSelected(settings.get("guiDebugging").getAsBoolean());
+			if (settings.has("pyDebugging"))
+				pyDebuggingCheckbox.setSelected(settings.get("pyDebugging").getAsBoolean());
+			if (settings.has("dictionaryDirectory"))
+				dictionaryDirectoryTextField.setText(settings.get("dictionaryDirectory").getAsString());
+			enableComponentsAccordingToState(getCurrentState());
+		}
+
+		@Override
+		public void show() {
+			super.show();
+			setSortState(TableSortState.createUnsortedSortState());
+		}
+
+		@Override
+		protected void setOkEnabled(boolean state) {
+			return;
+		}
+
+		public OutputMethod getOutputMethod() throws IllegalStateException {
+			if (outputStructRadio.isSelected())
+				return OutputMethod.Struct;
+			if (outputEnumRadio.isSelected())
+				return OutputMethod.Enum;
+			throw new IllegalStateException();
+		}
+
+		private String getComboBoxValue(JComboBox<String> box) {
+			String currentText;
+			try {
+				currentText = box.getEditor().getItem().toString();
+			} catch (Exception e1) {
+				try {
+					currentText = box.getSelectedItem().toString();
+				} catch (Exception e2) {
+					return null;
+				}
+			}
+			if (currentText.isBlank())
+				return null;
+			return currentText.trim();
+		}
+
+		private void addToComboBox(JComboBox<String> box, String value, boolean selectIt) {
+			boolean exists = false;
+			if (value == null)
+				return;
+			value = value.trim();
+			if (getComboBoxValue(box) == value)
+				exists = true;
+			for (int k = 0; !exists && k < box.getItemCount(); k++) {
+				String item = box.getItemAt(k);
+				if (item.compareTo(value) == 0)
+					exists = true;
+			}
+			if (!exists)
+				box.addItem(value);
+			if (selectIt)
+				box.setSelectedItem(value);
+		}
+
+		public void addNewPermutation(String permutation, boolean selectIt) {
+			int index = 0;
+			int count = permutationField.getItemCount();
+			boolean exists = false;
+			permutation = permutation.trim();
+			for (index = 0; index < count; index++) {
+				int stringDiff = permutation.compareTo(permutationField.getItemAt(index));
+				if (stringDiff == 0) {
+					exists = true;
+					break;
+				} else if (stringDiff < 0) {
+					break;
+				}
+			}
+			if (!exists)
+				permutationField.insertItemAt(permutation, index);
+			if (selectIt)
+				permutationField.setSelectedItem(permutation);
+		}
+
+		public String getCurrentPermutation() {
+			return getComboBoxValue(permutationField);
+		}
+
+		public void addNewHashAlgorithm(String algorithm, boolean selectIt) {
+			addToComboBox(hashAlgorithmField, algorithm, selectIt);
+		}
+
+		public String getCurrentHashAlgorithm() {
+			return getComboBoxValue(hashAlgorithmField);
+		}
+
+		public String getTransformation() {
+			return transformationTextField.getEditor().getItem().toString();
+		}
+
+		public boolean isTransformationInvertible() {
+			return !transformationIsNotInvertibleCheckbox.isSelected();
+		}
+
+		public String getTransformationInverse() throws IllegalStateException {
+			if (transformationIsNotInvertibleCheckbox.isSelected()) {
+				throw new IllegalStateException();
+			}
+			if (transformationIsSelfInverseCheckbox.isSelected()) {
+				return getTransformation();
+			}
+			return transformationInverseTextField.getText();
+		}
+
+		public String getStorageName() {
+			return enumNameTextField.getText();
+		}
+
+		public String getNonApiEnumName() {
+			return nonApiResolutionEnumName.getText();
+		}
+
+		public boolean resolveEntireModules() {
+			return resolveModulesCheckbox.isSelected();
+		}
+
+		public boolean narrowModuleExpansion() {
+			return narrowModulesCheckbox.isSelected();
+		}
+
+		public boolean prefetchResolutions() {
+			return prefetchCheckbox.isSelected();
+		}
+
+		public String getServiceUrl() {
+			String url = serviceUrlTextField.getText().trim();
+			return url.isEmpty() ? DEFAULT_SERVICE_URL : url;
+		}
+
+		public int getHuntConcurrency() {
+			return (Integer) huntConcurrencySpinner.getValue();
+		}
+
+		public boolean hedgeRequests() {
+			return hedgeRequestsCheckbox.isSelected();
+		}
+
+		public LogLevel getLogLevel() {
+			return (LogLevel) logLevelField.getSelectedItem();
+		}
+
+		public File getLogFile() {
+			String path = logFileTextField.getText().trim();
+			return path.isEmpty() ? null : new File(path);
+		}
+
+		public boolean isHttpDebugging() {
+			return httpDebuggingCheckbox.isSelected();
+		}
+
+		public boolean isGuiDebugging() {
+			return guiDebuggingCheckbox.isSelected();
+		}
+
+		public boolean isPyDebugging() {
+			return pyDebuggingCheckbox.isSelected();
+		}
+
+		public NameDictionary getNameDictionary() {
+			String path = dictionaryDirectoryTextField.getText().trim();
+			return new NameDictionary(path.isEmpty() ? DEFAULT_DICTIONARY_DIRECTORY : new File(path));
+		}
+
+		public List<File> getIndexFiles() {
+			ArrayList<File> files = new ArrayList<File>();
+			for (String path : indexFilesTextField.getText().split(File.pathSeparator)) {
+				if (!path.isBlank())
+					files.add(new File(path.trim()));
+			}
+			return files;
+		}
+
+		public double getAlgorithmThreshold() {
+			try {
+				double threshold = Double.parseDouble(hashAlgorithmThresholdField.getText());
 				if (threshold < 0) {
 					return 0;
 				}
@@ -515,13 +3620,15 @@ public class HashDB extends GhidraScript {
 		@Override
 		public void dispose() {
 			selectAllRows();
-			for (AddressableRowObject row : dialog.getSelectedRowObjects()) {
+			for (AddressableRowObject row : getSelectedRowObjects()) {
 				remove(row);
 			}
 		}
 
 		@Override
 		protected void okCallback() {
+			if (!claimWindow())
+				return;
 			TaskMonitor tm = getTaskMonitorComponent();
 			if (getSelectedRows().length == 0)
 				selectAllRows();
@@ -546,6 +3653,8 @@ public class HashDB extends GhidraScript {
 						return resolveHashes(hashLocations, taskMonitor);
 					} catch (ShowErrorInUi e) {
 						return e.getMessage();
+					} catch (CancelledException e) {
+						return "Operation canceled.";
 					} catch (Exception e) {
 						logDebugMessage("Exception during resolution:", e);
 						return "unexpected error during resolution, see log";
@@ -560,10 +3669,14 @@ public class HashDB extends GhidraScript {
 					} catch (InterruptedException | ExecutionException e) {
 						resultText = "unknown error during execution";
 					}
-					waitAndClearSelection();
-					selectRows();
-					hideTaskMonitorComponent();
-					setStatusText(resultText);
+					try {
+						waitAndClearSelection();
+						selectRows();
+						hideTaskMonitorComponent();
+						setStatusText(resultText);
+					} finally {
+						querying.set(false);
+					}
 				}
 			}
 
@@ -572,21 +3685,25 @@ public class HashDB extends GhidraScript {
 		}
 
 		public void waitAndClearSelection() {
+			waitUntilIdle();
+			clearSelection();
+		}
+
+		private void waitUntilIdle() {
 			long maxWaitCount = 200;
-			while (dialog.isBusy()) {
+			while (isBusy()) {
 				try {
 					Thread.sleep(10);
 				} catch (Exception e) {
-					logDebugMessage("Exception in waitAndClearSelection:", e);
+					logDebugMessage("Exception in waitUntilIdle:", e);
 					break;
 				}
 				if (maxWaitCount == 0) {
-					logDebugMessage("UI Timeout in waitAndClearSelection.");
+					logDebugMessage("UI Timeout in waitUntilIdle.");
 					break;
 				}
 				maxWaitCount--;
 			}
-			clearSelection();
 		}
 
 		public void parentOkCallback() {
@@ -625,15 +3742,27 @@ public class HashDB extends GhidraScript {
 		}
 
 		private JComponent addQuerySettingsPanel() {
-			TwoColumnPanel tc = new TwoColumnPanel(7);
+			TwoColumnPanel tc = new TwoColumnPanel(8);
 
 			transformationTextField = new JComboBox<>();
 			transformationTextField.setEditable(true);
-			transformationTextField.addItem("X  # Unaltered Hash Value");
-			transformationTextField.addItem("X ^ 0xBAADF00D  # XOR");
-			transformationTextField.addItem("((((X ^ 0x76C7) << 0x10) ^ X) ^ 0xAFB9) & 0x1FFFFF  # REvil");
+			for (String transformation : STOCK_TRANSFORMATIONS) {
+				transformationTextField.addItem(transformation);
+			}
 			transformationTextField.setSelectedIndex(0);
-			tc.addRow("Hash Transformation:", transformationTextField);
+			JPanel transformationLine = new JPanel(new BorderLayout(10, 10));
+			transformationLine.add(transformationTextField, BorderLayout.CENTER);
+			JButton solveButton = new JButton("Solve");
+			solveButton.setToolTipText(
+					"Search for a transformation that maps the hashes in the table to hashes in the index files.");
+			solveButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent event) {
+					solveTransformation();
+				}
+			});
+			transformationLine.add(solveButton, BorderLayout.EAST);
+			tc.addRow("Hash Transformation:", transformationLine);
 
 			final class UpdateButtons implements ActionListener {
 				@Override
@@ -663,7 +3792,7 @@ public class HashDB extends GhidraScript {
 			hashAlgorithmThresholdField.setText("1.0");
 			hashAlgorithmThresholdField.addFocusListener(new FocusAdapter() {
 				public void focusLost(FocusEvent e) {
-					hashAlgorithmThresholdField.setText(String.format("%.1f", dialog.getAlgorithmThreshold()));
+					hashAlgorithmThresholdField.setText(String.format("%.1f", getAlgorithmThreshold()));
 				}
 			});
 			hashAlgorithmLine.add(hashAlgorithmThresholdField, BorderLayout.EAST);
@@ -676,7 +3805,29 @@ public class HashDB extends GhidraScript {
 			tc.addRow("String Permutation:", permutationField);
 
 			resolveModulesCheckbox = new GCheckBox("Resolve Entire Modules");
-			tc.addRow(resolveModulesCheckbox);
+			narrowModulesCheckbox = new GCheckBox("Only Likely Modules");
+			narrowModulesCheckbox.setToolTipText("Only download modules that are imported, named in a string or "
+					+ "hit by several hashes; other hashes are resolved individually.");
+			JPanel modulesLine = new JPanel(new BorderLayout(10, 10));
+			modulesLine.add(resolveModulesCheckbox, BorderLayout.WEST);
+			modulesLine.add(narrowModulesCheckbox, BorderLayout.CENTER);
+			tc.addRow(modulesLine);
+
+			prefetchCheckbox = new GCheckBox("Resolve Hashes When Added");
+			prefetchCheckbox.setToolTipText("Look up hashes in the background as soon as they are added, "
+					+ "using the selected algorithm; \"Query!\" then only has to update the data types.");
+			prefetchCheckbox.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent event) {
+					if (prefetchCheckbox.isSelected()) {
+						prefetcher.schedule(getAllRows().stream().map(HashLocation::getHashAsLong)
+								.collect(Collectors.toList()));
+					} else {
+						prefetcher.cancel();
+					}
+				}
+			});
+			tc.addRow(prefetchCheckbox);
 
 			transformationIsSelfInverseCheckbox.setSelected(true);
 			updateButtons.actionPerformed(null);
@@ -751,9 +3902,10 @@ public class HashDB extends GhidraScript {
 			deleteSelectionButton.addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent event) {
-					for (AddressableRowObject row : dialog.getSelectedRowObjects()) {
+					for (AddressableRowObject row : getSelectedRowObjects()) {
 						remove(row);
 					}
+					scheduleStateSave();
 				}
 			});
 
@@ -765,10 +3917,55 @@ public class HashDB extends GhidraScript {
 			JPanel secondRow = new JPanel(new BorderLayout(10, 10));
 			secondRow.add(deleteSelectionButton, BorderLayout.EAST);
 
-			int rowCount = 2;
+			JComboBox<HashListReader.Format> importFormat = new JComboBox<>(HashListReader.Format.values());
+			JButton importFileButton = new JButton("From File...");
+			importFileButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent event) {
+					GhidraFileChooser chooser = new GhidraFileChooser(getComponent());
+					chooser.setTitle("Import Hashes");
+					chooser.setApproveButtonText("Import");
+					File input = chooser.getSelectedFile();
+					if (input == null)
+						return;
+					HashListReader.Format format = (HashListReader.Format) importFormat.getSelectedItem();
+					importHashList(() -> HashListReader.read(input, format));
+				}
+			});
+			JButton importClipboardButton = new JButton("From Clipboard");
+			importClipboardButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent event) {
+					HashListReader.Format format = (HashListReader.Format) importFormat.getSelectedItem();
+					if (format.isBinary()) {
+						setStatusText("Binary lists can only be imported from files.");
+						return;
+					}
+					String text;
+					try {
+						text = (String) Toolkit.getDefaultToolkit().getSystemClipboard()
+								.getData(DataFlavor.stringFlavor);
+					} catch (Exception e) {
+						setStatusText("The clipboard does not contain text.");
+						return;
+					}
+					importHashList(() -> HashListReader
+							.read(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), format));
+				}
+			});
+			JPanel importButtons = new JPanel(new GridLayout(1, 2, 5, 0));
+			importButtons.add(importFileButton);
+			importButtons.add(importClipboardButton);
+			JPanel thirdRow = new JPanel(new BorderLayout(10, 10));
+			thirdRow.add(new GDLabel("Import"), BorderLayout.WEST);
+			thirdRow.add(importFormat, BorderLayout.CENTER);
+			thirdRow.add(importButtons, BorderLayout.EAST);
+
+			int rowCount = 3;
 			JPanel topAlignedContents = new JPanel(new GridLayout(rowCount, 1));
 			topAlignedContents.add(firstRow);
 			topAlignedContents.add(secondRow);
+			topAlignedContents.add(thirdRow);
 
 			JPanel main = new JPanel(new BorderLayout());
 			main.setBorder(new EmptyBorder(5, 2, 0, 2));
@@ -776,6 +3973,28 @@ public class HashDB extends GhidraScript {
 			return main;
 		}
 
+		private void importHashList(Callable<HashListReader> reader) {
+			setStatusText("Importing hashes...");
+
+			final class Importer extends SwingWorker<String, Object> {
+				@Override
+				protected String doInBackground() throws Exception {
+					return importHashes(reader.call());
+				}
+
+				@Override
+				protected void done() {
+					try {
+						setStatusText(get());
+					} catch (InterruptedException | ExecutionException e) {
+						logDebugMessage("Error while importing hashes", e);
+						setStatusText("hash import failed, see log");
+					}
+				}
+			}
+			new Importer().execute();
+		}
+
 		@SuppressWarnings("unchecked")
 		public void setCrawlFunctionParameterCount(Number count) {
 			crawlParameterIndexModel.setMaximum((Comparable<Double>) count);
@@ -801,53 +4020,51 @@ public class HashDB extends GhidraScript {
 						logDebugMessage("No function with this name found");
 					} else if (functions.size() > 1) {
 						logDebugMessage("Multiple functions with this name found");
-					} else {
+					} else if (claimWindow()) {
 						TaskMonitor taskMonitor = getTaskMonitorComponent();
 						showProgressBar("Scanning functions", true, true, 0);
 						List<Address> calls = getCallAddresses(functions.get(0));
 						taskMonitor.initialize(calls.size());
+						metrics = new Metrics("scan");
+						startLogging("scan");
+						CallArgumentExtractor extractor = new CallArgumentExtractor(functions.get(0),
+								(Integer) crawlParameterIndex.getValue(), taskMonitor);
 						final class Resolver extends SwingWorker<Void, Object> {
 							@Override
 							protected Void doInBackground() throws Exception {
 								try {
-									for (Address callAddr : calls) {
-										try {
-											OptionalLong hash = getConstantCallArgument(callAddr,
-													(Integer) crawlParameterIndex.getValue());
-											if (hash.isEmpty()) {
-												logDebugMessage(String.format("Cannot extract value for call at 0x%x",
-														callAddr.getOffset()));
-											} else {
-												addHash(callAddr, hash.getAsLong());
-												if (GUI_DEBUGGING) {
-													logDebugMessage(
-															String.format("Found hash 0x%x passed to call at 0x%x",
-																	hash.getAsLong(), callAddr.getOffset()));
-												}
-											}
-										} catch (Exception e) {
-											logDebugMessage(String.format(
-													"Error while extracting parameter value from call at 0x%x",
-													callAddr.getOffset()), e);
-										}
-										taskMonitor.incrementProgress(1);
-										taskMonitor.checkCanceled();
-									}
+									scanCallArguments(calls, extractor, taskMonitor, this::addFoundHash);
 								} catch (CancelledException e) {
 									logDebugMessage("Operation canceled");
+								} finally {
+									extractor.dispose();
+									metrics.finish();
+									writeMetricsReport();
+									logger.endRun();
 								}
 								return null;
 							}
 
+							private void addFoundHash(Address callAddr, long hash) {
+								addHash(callAddr, hash);
+								if (isGuiDebugging()) {
+									logDebugMessage(String.format("Found hash 0x%x passed to call at 0x%x", hash,
+											callAddr.getOffset()));
+								}
+							}
+
 							@Override
 							protected void done() {
-								setStatusText(String.format("Scanned %d of %d function calls.",
-										taskMonitor.getProgress(), calls.size()));
+								setStatusText(String.format("Scanned %d of %d function calls (%d without decompiling). %s",
+										taskMonitor.getProgress(), calls.size(), extractor.getFastPathCount(),
+										metrics.summary()));
 								hideTaskMonitorComponent();
 								try {
 									get();
 								} catch (InterruptedException | ExecutionException e) {
 									logDebugMessage("Unknown error during scanning", e);
+								} finally {
+									querying.set(false);
 								}
 							}
 						}
@@ -861,6 +4078,175 @@ public class HashDB extends GhidraScript {
 			return tc.getMain();
 		}
 
+		private JComponent addDataSourcesPanel() {
+			TwoColumnPanel tc = new TwoColumnPanel(6);
+
+			serviceUrlTextField = new JTextField(DEFAULT_SERVICE_URL);
+			serviceUrlTextField.setToolTipText(
+					"Base URL of the HashDB web service, e.g. a local stand-in server started with \"serve\".");
+			tc.addRow("HashDB URL:", serviceUrlTextField);
+
+			huntConcurrencySpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_HUNT_CONCURRENCY, 1, 32, 1));
+			huntConcurrencySpinner.setToolTipText(
+					"Large hash sets are split into chunks to identify the algorithm; this many are sent at once.");
+			tc.addRow("Parallel Hunt Requests:", huntConcurrencySpinner);
+
+			hedgeRequestsCheckbox = new GCheckBox("Hedge Slow Requests");
+			hedgeRequestsCheckbox.setToolTipText(
+					"Send a second request when a lookup is slower than 95% of recent ones and use the first answer.");
+			tc.addRow(hedgeRequestsCheckbox);
+
+			indexFilesTextField = new JTextField();
+			indexFilesTextField.setToolTipText(String.format(
+					"Index files are consulted before the HashDB web service. Separate multiple paths by \"%s\".",
+					File.pathSeparator));
+			tc.addRow("Index Files:", indexFilesTextField);
+
+			JButton exportButton = new JButton("Export Index");
+			exportButton.setToolTipText(
+					"Write all resolutions from this session and the configured index files into a new index file.");
+			exportButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent event) {
+					GhidraFileChooser chooser = new GhidraFileChooser(getComponent());
+					chooser.setTitle("Export HashDB Index");
+					chooser.setApproveButtonText("Export");
+					File output = chooser.getSelectedFile();
+					if (output == null)
+						return;
+
+					final class Exporter extends SwingWorker<Integer, Object> {
+						@Override
+						protected Integer doInBackground() throws Exception {
+							return exportIndex(output);
+						}
+
+						@Override
+						protected void done() {
+							try {
+								setStatusText(String.format("Exported %d resolutions to %s.", get(), output.getName()));
+							} catch (InterruptedException | ExecutionException e) {
+								logDebugMessage("Error while exporting index", e);
+								setStatusText("index export failed, see log");
+							}
+						}
+					}
+					new Exporter().execute();
+				}
+			});
+			tc.addRow(exportButton);
+
+			dictionaryDirectoryTextField = new JTextField(DEFAULT_DICTIONARY_DIRECTORY.getPath());
+			dictionaryDirectoryTextField.setToolTipText(
+					"Directory of API name lists that \"Build Index\" hashes with all locally supported algorithms.");
+			JButton addProgramButton = new JButton("Add Program");
+			addProgramButton.setToolTipText("Add the imports and the names from the program's data type archives.");
+			addProgramButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent event) {
+					NameDictionary dictionary = getNameDictionary();
+					runDictionaryTask(() -> String.format("Updated %d dictionary sources.",
+							harvestProgramNames(dictionary)));
+				}
+			});
+			JButton addFilesButton = new JButton("Add Files...");
+			addFilesButton.setToolTipText(
+					"Add DLLs or export lists (one \"name\", \"module!name\" or \"module,name\" per line).");
+			addFilesButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent event) {
+					GhidraFileChooser chooser = new GhidraFileChooser(getComponent());
+					chooser.setTitle("Add DLLs or Export Lists to the Dictionary");
+					chooser.setApproveButtonText("Add");
+					chooser.setMultiSelectionEnabled(true);
+					List<File> files = chooser.getSelectedFiles();
+					if (files == null || files.isEmpty())
+						return;
+					NameDictionary dictionary = getNameDictionary();
+					runDictionaryTask(() -> String.format("Updated %d of %d dictionary sources.",
+							addDictionaryFiles(dictionary, files), files.size()));
+				}
+			});
+			JButton buildIndexButton = new JButton("Build Index");
+			buildIndexButton.setToolTipText("Hash the dictionary into an index file and add it to the index files.");
+			buildIndexButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent event) {
+					NameDictionary dictionary = getNameDictionary();
+					File output = new File(dictionary.directory, "dictionary.idx");
+					runDictionaryTask(() -> {
+						int entries = writeDictionaryIndex(dictionary.load(), Arrays.asList(BulkHasher.ALGORITHMS),
+								output);
+						SwingUtilities.invokeLater(() -> {
+							if (!getIndexFiles().contains(output)) {
+								String paths = indexFilesTextField.getText().trim();
+								indexFilesTextField.setText(paths.isEmpty() ? output.getPath()
+										: paths + File.pathSeparator + output.getPath());
+							}
+							scheduleStateSave();
+						});
+						return String.format("Wrote %d dictionary entries to %s.", entries, output.getName());
+					});
+				}
+			});
+			JPanel dictionaryButtons = new JPanel(new GridLayout(1, 3, 5, 0));
+			dictionaryButtons.add(addProgramButton);
+			dictionaryButtons.add(addFilesButton);
+			dictionaryButtons.add(buildIndexButton);
+			JPanel dictionaryLine = new JPanel(new BorderLayout(10, 10));
+			dictionaryLine.add(dictionaryDirectoryTextField, BorderLayout.CENTER);
+			dictionaryLine.add(dictionaryButtons, BorderLayout.EAST);
+			tc.addRow("Dictionary:", dictionaryLine);
+
+			return tc.getMain();
+		}
+
+		private JComponent addDiagnosticsPanel() {
+			TwoColumnPanel tc = new TwoColumnPanel(3);
+
+			logLevelField = new JComboBox<>(LogLevel.values());
+			logLevelField.setSelectedItem(LogLevel.Info);
+			logLevelField.setToolTipText("Messages below this level are not printed to the console.");
+			tc.addRow("Console Log Level:", logLevelField);
+
+			logFileTextField = new JTextField();
+			logFileTextField.setToolTipText(
+					"Every query and scan appends all its messages, including debug messages, to this file.");
+			tc.addRow("Log File:", logFileTextField);
+
+			httpDebuggingCheckbox = new GCheckBox("HTTP Requests");
+			guiDebuggingCheckbox = new GCheckBox("Table Updates");
+			pyDebuggingCheckbox = new GCheckBox("Transformations");
+			JPanel tracingLine = new JPanel(new GridLayout(1, 3, 5, 0));
+			tracingLine.add(httpDebuggingCheckbox);
+			tracingLine.add(guiDebuggingCheckbox);
+			tracingLine.add(pyDebuggingCheckbox);
+			tc.addRow("Trace:", tracingLine);
+
+			return tc.getMain();
+		}
+
+		private void runDictionaryTask(Callable<String> task) {
+			final class DictionaryTask extends SwingWorker<String, Object> {
+				@Override
+				protected String doInBackground() throws Exception {
+					return task.call();
+				}
+
+				@Override
+				protected void done() {
+					try {
+						setStatusText(get());
+					} catch (InterruptedException | ExecutionException e) {
+						logDebugMessage("Error while updating the dictionary", e);
+						setStatusText("dictionary update failed, see log");
+					}
+				}
+			}
+			setStatusText("Updating dictionary...");
+			new DictionaryTask().execute();
+		}
+
 		JTabbedPane McPane;
 
 		protected void addWorkPanel(JComponent hauptPanele) {
@@ -870,6 +4256,8 @@ public class HashDB extends GhidraScript {
 			McPane.addTab("Output Settings", addOutputSettingsPanel());
 			McPane.addTab("Edit Table", addEditTablePanel());
 			McPane.addTab("Scan Function", addScanFunctionPanel());
+			McPane.addTab("Data Sources", addDataSourcesPanel());
+			McPane.addTab("Diagnostics", addDiagnosticsPanel());
 			hauptPanele.add(McPane, BorderLayout.SOUTH);
 			enableComponentsAccordingToState(getCurrentState());
 		}
@@ -890,15 +4278,45 @@ public class HashDB extends GhidraScript {
 		}
 	}
 
-	static HashTable dialog = null;
+	/*-
+	 * One window per program, each with its own table, settings and query, so that programs can be
+	 * worked on side by side. A window belongs to the script instance that created it, whose
+	 * currentProgram, metrics and logger its queries use; later runs of the script on the same
+	 * program bind their dialog field to that window. The resolution cache, the index files, request
+	 * coalescing and the service health are static and shared by all windows.
+	 */
+	static Map<Program, HashTable> sessions = new HashMap<Program, HashTable>();
+
+	/**
+	 * The window of currentProgram; null while running headless.
+	 */
+	private HashTable dialog = null;
+
+	/**
+	 * Settings used instead of the dialog while running headless; null in interactive use.
+	 */
+	private ResolutionSettings headlessSettings = null;
+
+	private ResolutionSettings getSettings() {
+		return headlessSettings != null ? headlessSettings : dialog;
+	}
 
 	private void showDialog() {
-		if (dialog == null) {
-			if (GUI_DEBUGGING) {
-				logDebugMessage("Creating new dialog.");
+		synchronized (sessions) {
+			dialog = sessions.get(currentProgram);
+			if (dialog == null) {
+				logVerbose("Creating new dialog for %s.", currentProgram.getName());
+				dialog = new HashTable(state.getTool(), new HashTableExecutor(), currentProgram,
+						String.format("HashDB is BestDB: %s", currentProgram.getName()));
+				configureTableColumns(dialog);
+				try {
+					new ProgramStateStore(currentProgram).restore(dialog);
+				} catch (Exception e) {
+					logDebugMessage("Unable to restore HashDB state from program:", e);
+				}
+				sessions.put(currentProgram, dialog);
+				currentProgram.addCloseListener(new SessionCloser(dialog));
 			}
-			dialog = new HashTable(state.getTool(), new HashTableExecutor(), currentProgram, "HashDB is BestDB");
-			configureTableColumns(dialog);
 		}
 		if (!dialog.isVisible()) {
 			dialog.show();
@@ -907,6 +4325,26 @@ public class HashDB extends GhidraScript {
 		state.getTool().showDialog(dialog);
 	}
 
+	/*-
+	 * Closes the window of a program and forgets it when the program is closed.
+	 */
+	private static class SessionCloser implements DomainObjectClosedListener {
+		private final HashTable session;
+
+		SessionCloser(HashTable session) {
+			this.session = session;
+		}
+
+		@Override
+		public void domainObjectClosed(DomainObject program) {
+			synchronized (sessions) {
+				sessions.remove(program, session);
+			}
+			session.prefetcher.shutdown();
+			SwingUtilities.invokeLater(session::close);
+		}
+	}
+
 	private long parseHash(String input) throws Exception {
 		if (input.length() == 0) {
 			throw new Exception(String.format("Invalid input: %s (zero length)", input));
@@ -932,28 +4370,165 @@ public class HashDB extends GhidraScript {
 	}
 
 	private boolean addHashes(HashMap<Long, Address> hashes) {
-		dialog.selectAllRows();
-		for (AddressableRowObject aro : dialog.getSelectedRowObjects()) {
-			HashLocation hl = (HashLocation) aro;
-			hashes.remove(hl.getHashAsLong());
+		ArrayList<HashLocation> rows = new ArrayList<HashLocation>();
+		for (Map.Entry<Long, Address> entry : hashes.entrySet()) {
+			rows.add(new HashLocation(entry.getValue(), entry.getKey()));
 		}
-		for (Long hash : hashes.keySet()) {
-			dialog.add(new HashLocation(hashes.get(hash), hash));
-		}
-		dialog.waitAndClearSelection();
+		addRows(rows);
 		return true;
 	}
 
+	/**
+	 * Adds the rows whose hash is not in the table yet. The table model applies the additions in one
+	 * batch, so this is fast for large lists, too.
+	 *
+	 * @return the number of rows that were added.
+	 */
+	private int addRows(List<HashLocation> rows) {
+		HashSet<Long> present = new HashSet<Long>();
+		for (HashLocation row : dialog.getAllRows()) {
+			present.add(row.getHashAsLong());
+		}
+		ArrayList<Long> added = new ArrayList<Long>();
+		for (HashLocation row : rows) {
+			if (present.add(row.getHashAsLong())) {
+				dialog.add(row);
+				added.add(row.getHashAsLong());
+			}
+		}
+		dialog.scheduleStateSave();
+		dialog.prefetcher.schedule(added);
+		return added.size();
+	}
+
+	/**
+	 * Adds the hashes of a list to the table; CSV labels are shown as the resolution until a query
+	 * replaces them.
+	 *
+	 * @return the status message for the dialog.
+	 */
+	private String importHashes(HashListReader list) {
+		AddressSpace space = currentProgram.getAddressFactory().getDefaultAddressSpace();
+		ArrayList<HashLocation> rows = new ArrayList<HashLocation>(list.size);
+		for (int k = 0; k < list.size; k++) {
+			Address address = null;
+			if (list.addresses[k] != HashListReader.NO_ADDRESS) {
+				try {
+					address = space.getAddress(list.addresses[k]);
+				} catch (AddressOutOfBoundsException e) {
+					logVerbose("Ignoring address 0x%x of hash 0x%x, it is out of bounds.", list.addresses[k],
+							list.hashes[k]);
+				}
+			}
+			HashLocation row = new HashLocation(address, list.hashes[k]);
+			if (list.labels != null)
+				row.resolution = list.labels[k];
+			rows.add(row);
+		}
+		int added = addRows(rows);
+		String status = String.format("Imported %d hashes.", added);
+		if (added < list.size)
+			status = String.format("%s %d were already in the table.", status, list.size - added);
+		if (list.invalid > 0)
+			status = String.format("%s %d entries could not be read.", status, list.invalid);
+		return status;
+	}
+
+	/*-
+	 * Resolves hashes speculatively as they are added to the table, so that "Query!" finds them in
+	 * the resolution cache and only has to update the data types. Requests go through the same
+	 * cache, index files and request coalescing as a query, on a single low-priority thread. Only
+	 * runs when an algorithm has been selected (or picked by an earlier hunt); a batch is abandoned
+	 * when HashDB becomes unavailable or prefetching is switched off. Each window owns one, which is
+	 * shut down when its program is closed.
+	 */
+	private class Prefetcher {
+		private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "HashDB prefetch");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		private final AtomicLong generation = new AtomicLong();
+
+		void schedule(Collection<Long> hashes) {
+			ResolutionSettings settings = getSettings();
+			if (settings == null || !settings.prefetchResolutions() || hashes.isEmpty())
+				return;
+			String algorithm = settings.getCurrentHashAlgorithm();
+			if (algorithm == null)
+				return;
+			String transformation = settings.getTransformation();
+			long[] batch = hashes.stream().mapToLong(Long::longValue).toArray();
+			long batchGeneration = generation.get();
+			executor.execute(() -> prefetch(batch, algorithm, transformation, batchGeneration));
+		}
+
+		void cancel() {
+			generation.incrementAndGet();
+		}
+
+		void shutdown() {
+			cancel();
+			executor.shutdownNow();
+		}
+
+		private void prefetch(long[] batch, String algorithm, String transformation, long batchGeneration) {
+			HashDBApi api = new HashDBApi();
+			int done = 0;
+			for (long hash : batch) {
+				if (generation.get() != batchGeneration)
+					break;
+				try {
+					api.resolve(algorithm, applyTransformation(hash, transformation), null);
+					done++;
+				} catch (ServiceUnavailableException e) {
+					break;
+				} catch (Exception e) {
+					logVerbose("Unable to prefetch 0x%08X: %s", hash, e.getMessage());
+				}
+			}
+			logVerbose("Prefetched %d of %d hashes.", done, batch.length);
+		}
+	}
+
 	private void logDebugMessage(String msg) {
 		logDebugMessage(msg, null);
 	}
 
 	private void logDebugMessage(String msg, Exception e) {
-		String logOutput = String.format("[HashDB] %s", msg);
-		if (e != null) {
-			logOutput = String.format("%s %s", logOutput, getStackTraceAsString(e));
+		if (e == null) {
+			logger.log(LogLevel.Info, msg);
+		} else {
+			logger.log(LogLevel.Warning, String.format("%s %s", msg, getStackTraceAsString(e)));
 		}
-		println(logOutput);
+	}
+
+	/**
+	 * Logs a message that may be repeated for every hash or call site; it is only formatted and
+	 * printed when the level is enabled.
+	 */
+	private void logVerbose(String format, Object... args) {
+		if (logger.isEnabled(LogLevel.Debug))
+			logger.log(LogLevel.Debug, String.format(format, args));
+	}
+
+	private void startLogging(String name) {
+		ResolutionSettings settings = getSettings();
+		logger.startRun(name, settings == null ? LogLevel.Info : settings.getLogLevel(),
+				settings == null ? null : settings.getLogFile());
+	}
+
+	private boolean isHttpDebugging() {
+		return getSettings() != null && getSettings().isHttpDebugging();
+	}
+
+	private boolean isGuiDebugging() {
+		return getSettings() != null && getSettings().isGuiDebugging();
+	}
+
+	private boolean isPyDebugging() {
+		return getSettings() != null && getSettings().isPyDebugging();
 	}
 
 	private DataType getDataType(String name, DataType fallback) {
@@ -983,21 +4558,35 @@ public class HashDB extends GhidraScript {
 	}
 
 	public void run() throws Exception {
+		try {
+			runCommand();
+		} finally {
+			logger.flush();
+		}
+	}
+
+	private void runCommand() throws Exception {
+		String[] args = getScriptArgs();
+		if (args != null && args.length > 0 && args[0].equals("benchmark")) {
+			new Benchmark(args).run();
+			return;
+		}
+		if (args != null && args.length > 0 && args[0].equals("benchmark-e2e")) {
+			new EndToEndBenchmark(args).run();
+			return;
+		}
+		if (args != null && args.length > 0 && args[0].equals("serve")) {
+			new StandInServer(args).run();
+			return;
+		}
+		if (args != null && args.length > 0 && args[0].equals("index")) {
+			buildDictionaryIndex(args);
+			return;
+		}
 		showDialog();
 		LinkedHashMap<Long, Address> hashes = new LinkedHashMap<Long, Address>();
 		if (currentSelection != null) {
-			long nextCheckpoint = currentSelection.getMinAddress().getOffset();
-			for (AddressRange addressRange : currentSelection.getAddressRanges(true)) {
-				for (Address address : addressRange) {
-					if (address.getOffset() < nextCheckpoint)
-						continue;
-					try {
-						nextCheckpoint = getHashesAt(address, hashes).getOffset();
-					} catch (Exception e) {
-						logDebugMessage(String.format("Error parsing data at 0x%08X:", address.getOffset()), e);
-					}
-				}
-			}
+			getHashesInSelection(currentSelection, hashes);
 		} else {
 			try {
 				getHashesAtCurrentLocation(hashes);
@@ -1020,6 +4609,99 @@ public class HashDB extends GhidraScript {
 		}
 	}
 
+	/*-
+	 * A data type that was built without touching the program: the type that is stored first (a
+	 * complete struct, a new empty enum, or the existing enum that new values are merged into) and
+	 * the enum values that are added to it afterwards.
+	 */
+	static class PendingType {
+		final DataType shell;
+		final ArrayList<String> names = new ArrayList<String>();
+		final ArrayList<Long> values = new ArrayList<Long>();
+
+		PendingType(DataType shell) {
+			this.shell = shell;
+		}
+
+		String getName() {
+			return shell.getName();
+		}
+
+		int size() {
+			return names.size();
+		}
+
+		void addValue(String name, long value) {
+			values.add(value);
+			names.add(name);
+		}
+
+		void addTo(DataType target, int i) {
+			((ghidra.program.model.data.Enum) target).add(names.get(i), values.get(i));
+		}
+	}
+
+	/*-
+	 * Stores pending types in the program. Structs replace the old type in a single transaction,
+	 * so nothing ever sees them partially written. Enum values are added in transactions of a
+	 * bounded size after the enum is stored, so the program lock is never held for long while a
+	 * whole module is merged; the enum only grows in the meantime. When cancelled, the values added
+	 * so far are kept.
+	 */
+	static class DataTypeCommitCommand extends BackgroundCommand {
+		private static final int ENTRIES_PER_TRANSACTION = 256;
+
+		private final List<PendingType> types;
+
+		DataTypeCommitCommand(List<PendingType> types) {
+			super("Update HashDB Data Types", true, true, false);
+			this.types = types;
+		}
+
+		@Override
+		public boolean applyTo(DomainObject obj, TaskMonitor monitor) {
+			Program program = (Program) obj;
+			DataTypeManager dataTypeManager = program.getDataTypeManager();
+			int total = types.stream().mapToInt(PendingType::size).sum();
+			int added = 0;
+			monitor.initialize(total);
+			try {
+				for (PendingType type : types) {
+					String description = String.format("updating data type \"%s\"", type.getName());
+					monitor.setMessage(description);
+					DataType target = type.shell;
+					if (target.getDataTypeManager() != dataTypeManager) {
+						int id = program.startTransaction(description);
+						try {
+							target = dataTypeManager.addDataType(type.shell, DataTypeConflictHandler.REPLACE_HANDLER);
+						} finally {
+							program.endTransaction(id, true);
+						}
+					}
+					for (int start = 0; start < type.size(); start += ENTRIES_PER_TRANSACTION) {
+						monitor.checkCanceled();
+						int end = Math.min(type.size(), start + ENTRIES_PER_TRANSACTION);
+						int id = program.startTransaction(description);
+						try {
+							for (int i = start; i < end; i++) {
+								type.addTo(target, i);
+							}
+						} finally {
+							program.endTransaction(id, true);
+						}
+						added += end - start;
+						monitor.setProgress(added);
+					}
+				}
+				return true;
+			} catch (CancelledException e) {
+				setStatusMsg(
+						String.format("Data types are incomplete, canceled after %d of %d entries.", added, total));
+				return false;
+			}
+		}
+	}
+
 	public class DataTypeFactory {
 		private OutputMethod strategy;
 		private DataTypeManager dataTypeManager;
@@ -1031,36 +4713,19 @@ public class HashDB extends GhidraScript {
 			this.rootPath = new CategoryPath("/HashDB");
 		}
 
-		private DataType makeNew(String name) {
-			switch (strategy) {
-			case Struct:
-				return new StructureDataType(rootPath, name, 0);
-			case Enum:
-			default:
-				return new EnumDataType(rootPath, name, 4);
-			}
-		}
-
-		private DataType getOutputType(String name) {
-			DataType hashStorage = dataTypeManager.getDataType(new DataTypePath("/HashDB", name));
-			if (hashStorage != null) {
-				if (strategy == OutputMethod.Enum) {
-					DataType copy = hashStorage.copy(dataTypeManager);
-					if (copy instanceof EnumDataType) {
-						return copy;
-					}
-				}
-				logDebugMessage(String.format("A type named \"%s\" already exists; it will be overwritten.", name));
-			}
-			return makeNew(name);
+		private DataType getExistingType(String name) {
+			return dataTypeManager.getDataType(new DataTypePath("/HashDB", name));
 		}
 
-		private void putOutputType(DataType hashStorage) {
-			dataTypeManager.addDataType(hashStorage, DataTypeConflictHandler.REPLACE_HANDLER);
+		private void warnOverwrite(String name) {
+			logDebugMessage(String.format("A type named \"%s\" already exists; it will be overwritten.", name));
 		}
 
-		private DataType commitApiResultsToStruct(HashResolutionResultStore store, String name) {
-			StructureDataType dst = (StructureDataType) getOutputType(name);
+		private PendingType buildApiStruct(HashResolutionResultStore store, String name) {
+			if (getExistingType(name) != null) {
+				warnOverwrite(name);
+			}
+			StructureDataType struct = new StructureDataType(rootPath, name, 0);
 			for (HashResolutionResult result : store.allResults()) {
 				DataType entryDataType = null;
 				String apiName = null;
@@ -1075,57 +4740,65 @@ public class HashDB extends GhidraScript {
 					entryDataType = new FunctionDefinitionDataType("FARPROC");
 				}
 				entryDataType = PointerDataType.getPointer(entryDataType, currentProgram.getDefaultPointerSize());
-				logDebugMessage(String.format("adding %s to %s", entryDataType.toString(), name));
+				logVerbose("adding %s to %s", entryDataType, name);
 				if (apiName == null) {
-					dst.add(entryDataType);
+					struct.add(entryDataType);
 				} else {
-					dst.add(entryDataType, apiName, "");
+					struct.add(entryDataType, apiName, "");
 				}
 			}
-			return dst;
-		}
-
-		public void commitDataType(DataType dst) {
-			int id = currentProgram.startTransaction(String.format("updating data type \"%s\"", dst.getDisplayName()));
-			try {
-				putOutputType(dst);
-			} finally {
-				currentProgram.endTransaction(id, true);
-			}
+			return new PendingType(struct);
 		}
 
-		public void commitApiResults(String name, HashResolutionResultStore store) {
-			DataType dst = null;
+		public PendingType buildApiType(String name, HashResolutionResultStore store) {
 			switch (strategy) {
-			case Enum:
-				dst = commitResultsToEnum(store.resolvedResults(), name);
-				break;
 			case Struct:
-				dst = commitApiResultsToStruct(store, name);
-				break;
+				return buildApiStruct(store, name);
+			case Enum:
+			default:
+				return buildEnum(store.resolvedResults(), name);
 			}
-			commitDataType(dst);
 		}
 
-		public DataType commitResultsToEnum(ArrayList<HashResolutionResult> results, String name) {
-			DataType hashStorage = getOutputType(name);
-			EnumDataType dst = (EnumDataType) hashStorage;
+		/**
+		 * Enums are merged: values that are already in an existing enum of the same name are kept.
+		 */
+		public PendingType buildEnum(ArrayList<HashResolutionResult> results, String name) {
+			DataType existing = getExistingType(name);
+			EnumDataType merged = null;
+			if (existing != null) {
+				DataType copy = existing.copy(dataTypeManager);
+				if (copy instanceof EnumDataType) {
+					merged = (EnumDataType) copy;
+				} else {
+					warnOverwrite(name);
+				}
+			}
+			PendingType dst;
+			if (merged == null) {
+				merged = new EnumDataType(rootPath, name, 4);
+				dst = new PendingType(new EnumDataType(rootPath, name, 4));
+			} else {
+				dst = new PendingType(existing);
+			}
 			for (HashResolutionResult result : results) {
 				String apiName = result.getApiName();
 				if (apiName == null) {
-					if (GUI_DEBUGGING) {
-						logDebugMessage(String.format("skipping hash 0x%08X because resolved name is null", result.hashBeforeTransformation));
+					if (isGuiDebugging()) {
+						logVerbose("skipping hash 0x%08X because resolved name is null",
+								result.hashBeforeTransformation);
 					}
 				} else {
 					try {
-						long oldValue = dst.getValue(apiName);
+						long oldValue = merged.getValue(apiName);
 						if (oldValue != result.hashBeforeTransformation) {
 							logDebugMessage(String.format(
 									"%s contains duplicate entry %s with value 0x%08X, new value 0x%08X ignored.", name,
 									apiName, oldValue, result.hashBeforeTransformation));
 						}
 					} catch (NoSuchElementException e) {
-						dst.add(result.getApiName(), result.hashBeforeTransformation);
+						merged.add(apiName, result.hashBeforeTransformation);
+						dst.addValue(apiName, result.hashBeforeTransformation);
 					}
 				}
 			}
@@ -1207,15 +4880,48 @@ public class HashDB extends GhidraScript {
 
 	private class HashResolutionResultStore {
 		private Map<Long, HashResolutionResult> store;
+		private String algorithm;
+		private LinkedHashMap<String, String[]> expandedModules;
+		private int unavailableCount = 0;
 
-		HashResolutionResultStore() {
+		HashResolutionResultStore(String algorithm) {
 			store = new LinkedHashMap<Long, HashResolutionResult>();
+			this.algorithm = algorithm;
+			this.expandedModules = new LinkedHashMap<String, String[]>();
+		}
+
+		public String getAlgorithm() {
+			return algorithm;
+		}
+
+		/**
+		 * @return false if the module was already expanded in this run.
+		 */
+		public boolean addExpandedModule(String module, String permutation) {
+			return expandedModules.putIfAbsent(String.format("%s/%s", module, permutation),
+					new String[] { module, permutation }) == null;
+		}
+
+		public Iterable<String[]> getExpandedModules() {
+			return expandedModules.values();
 		}
 
 		public void addNoMatch(long hashBeforeTransform, long hashAfterTransform) {
 			store.put(hashAfterTransform, new HashResolutionResult(hashBeforeTransform));
 		}
 
+		/**
+		 * Records a hash that was not found in the local tiers while the web service was unavailable.
+		 */
+		public void addUnavailable(long hashBeforeTransform, long hashAfterTransform) {
+			addNoMatch(hashBeforeTransform, hashAfterTransform);
+			unavailableCount++;
+		}
+
+		public int getUnavailableCount() {
+			return unavailableCount;
+		}
+
 		public void addCollision(long hashBeforeTransform, long hashAfterTransform,
 				ArrayList<HashDBApi.HashInfo> hashInfos) {
 			store.put(hashAfterTransform, new HashResolutionResult(hashBeforeTransform, hashInfos));
@@ -1237,6 +4943,23 @@ public class HashDB extends GhidraScript {
 			return store.get(hashAfterTransform);
 		}
 
+		/**
+		 * Puts the results of the given hashes first, in the given order, followed by the results that
+		 * only come from module expansions.
+		 */
+		public void orderBy(long[] hashesAfterTransform) {
+			LinkedHashMap<Long, HashResolutionResult> ordered = new LinkedHashMap<Long, HashResolutionResult>();
+			for (long hash : hashesAfterTransform) {
+				HashResolutionResult result = store.get(hash);
+				if (result != null)
+					ordered.putIfAbsent(hash, result);
+			}
+			for (Map.Entry<Long, HashResolutionResult> entry : store.entrySet()) {
+				ordered.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+			store = ordered;
+		}
+
 		public String prunePermutations() throws Exception {
 			HashSet<String> matches = globallyMatchingPermutations();
 			if (matches.size() == 0) {
@@ -1329,6 +5052,262 @@ public class HashDB extends GhidraScript {
 		}
 	}
 
+	/*-
+	 * Local journal of the running query, so that a crash, a cancel or a lost connection does not
+	 * throw away what was already resolved. The first line records the settings and the rows of the
+	 * run, every further line a resolved hash or an expanded module, and a last "done" line marks a
+	 * run that completed. Lines are JSON objects that are flushed as they are written; a truncated
+	 * last line, as left by a crash, is ignored when the journal is read. There is one journal per
+	 * program, overwritten by each run.
+	 */
+	static class RunJournal {
+		static final File DEFAULT_DIRECTORY = new File(new File(System.getProperty("user.home"), ".hashdb"),
+				"journal");
+
+		static class Checkpoint {
+			final JsonObject settings;
+			final LinkedHashMap<Long, String> rows = new LinkedHashMap<Long, String>();
+			final LinkedHashMap<Long, JsonObject> hashes = new LinkedHashMap<Long, JsonObject>();
+			final LinkedHashMap<String, JsonObject> modules = new LinkedHashMap<String, JsonObject>();
+
+			Checkpoint(JsonObject run) {
+				settings = run.getAsJsonObject("settings");
+				for (JsonElement element : run.getAsJsonArray("rows")) {
+					JsonObject row = element.getAsJsonObject();
+					rows.put(row.get("hash").getAsLong(), row.has("address") ? row.get("address").getAsString() : null);
+				}
+			}
+		}
+
+		private final PrintWriter writer;
+
+		/**
+		 * A journal that records nothing.
+		 */
+		RunJournal() {
+			writer = null;
+		}
+
+		RunJournal(File file, JsonObject settings, List<HashLocation> rows) throws IOException {
+			Files.createDirectories(file.getParentFile().toPath());
+			writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+			JsonArray rowArray = new JsonArray();
+			for (HashLocation location : rows) {
+				JsonObject row = new JsonObject();
+				row.addProperty("hash", location.getHashAsLong());
+				if (location.getAddress() != null)
+					row.addProperty("address", location.getAddress().toString());
+				rowArray.add(row);
+			}
+			JsonObject run = new JsonObject();
+			run.add("settings", settings);
+			run.add("rows", rowArray);
+			write("run", run);
+		}
+
+		static File fileFor(Program program) {
+			String identity = program.getExecutableSHA256();
+			if (identity == null)
+				identity = program.getName();
+			String readable = program.getName().replaceAll("[^A-Za-z0-9_.-]", "_");
+			return new File(DEFAULT_DIRECTORY, String.format("%s-%08x.journal", readable, identity.hashCode()));
+		}
+
+		private synchronized void write(String kind, JsonObject record) {
+			if (writer == null)
+				return;
+			JsonObject line = new JsonObject();
+			line.add(kind, record);
+			writer.println(line.toString());
+			writer.flush();
+		}
+
+		void recordHash(long hashAfterTransform, JsonObject hashInfos) {
+			hashInfos.addProperty("hash", hashAfterTransform);
+			write("resolved", hashInfos);
+		}
+
+		void recordModule(String module, String permutation, JsonObject hashInfos) {
+			hashInfos.addProperty("module", module);
+			hashInfos.addProperty("permutation", permutation);
+			write("expanded", hashInfos);
+		}
+
+		/**
+		 * @param complete whether every hash was resolved, in which case there is nothing to resume.
+		 */
+		synchronized void close(boolean complete) {
+			if (writer == null)
+				return;
+			if (complete)
+				write("done", new JsonObject());
+			writer.close();
+		}
+
+		/**
+		 * @return what an interrupted run recorded, or null if there is no journal or the run completed.
+		 */
+		static Checkpoint read(File file) throws IOException {
+			if (!file.isFile())
+				return null;
+			Checkpoint checkpoint = null;
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				JsonObject record;
+				try {
+					record = JsonParser.parseString(line).getAsJsonObject();
+				} catch (RuntimeException e) {
+					break;
+				}
+				if (record.has("run")) {
+					checkpoint = new Checkpoint(record.getAsJsonObject("run"));
+				} else if (checkpoint == null || record.has("done")) {
+					return null;
+				} else if (record.has("resolved")) {
+					JsonObject resolved = record.getAsJsonObject("resolved");
+					checkpoint.hashes.put(resolved.get("hash").getAsLong(), resolved);
+				} else if (record.has("expanded")) {
+					JsonObject expanded = record.getAsJsonObject("expanded");
+					checkpoint.modules.put(String.format("%s/%s", expanded.get("module").getAsString(),
+							expanded.get("permutation").getAsString()), expanded);
+				}
+			}
+			return checkpoint;
+		}
+	}
+
+	/*-
+	 * Persists the table, the query settings and all resolutions used by previous runs, so that reopening
+	 * the window on a program restores everything without network traffic. The table and the settings
+	 * change with every edit and live in the program's user data, which has no undo history and does not
+	 * mark the program as changed; the resolutions are written to the program options when a query ends.
+	 */
+	private class ProgramStateStore {
+		private static final String OPTIONS_CATEGORY = "HashDB";
+		private static final String SETTINGS = "Settings";
+		private static final String TABLE = "Table";
+		private static final String RESOLUTIONS = "Resolutions";
+
+		private final Program program;
+
+		ProgramStateStore(Program program) {
+			this.program = program;
+		}
+
+		private Options getOptions(String name) {
+			if (name.equals(RESOLUTIONS))
+				return program.getOptions(OPTIONS_CATEGORY);
+			return program.getProgramUserData().getOptions(OPTIONS_CATEGORY);
+		}
+
+		private JsonObject read(String name) {
+			String value = getOptions(name).getString(name, null);
+			if (value == null)
+				return new JsonObject();
+			return JsonParser.parseString(value).getAsJsonObject();
+		}
+
+		private void write(Map<String, JsonObject> values) {
+			int id = program.startTransaction("updating HashDB state");
+			try {
+				Options options = program.getOptions(OPTIONS_CATEGORY);
+				for (Map.Entry<String, JsonObject> entry : values.entrySet()) {
+					options.setString(entry.getKey(), entry.getValue().toString());
+				}
+			} finally {
+				program.endTransaction(id, true);
+			}
+		}
+
+		private void writeUserData(Map<String, JsonObject> values) {
+			ProgramUserData userData = program.getProgramUserData();
+			int id = userData.startTransaction();
+			try {
+				Options options = userData.getOptions(OPTIONS_CATEGORY);
+				for (Map.Entry<String, JsonObject> entry : values.entrySet()) {
+					options.setString(entry.getKey(), entry.getValue().toString());
+				}
+			} finally {
+				userData.endTransaction(id);
+			}
+		}
+
+		public void saveTable(HashTable table) {
+			JsonArray rows = new JsonArray();
+			for (HashLocation location : table.getAllRows()) {
+				JsonObject row = new JsonObject();
+				row.addProperty("hash", location.getHashAsLong());
+				if (location.getAddress() != null)
+					row.addProperty("address", location.getAddress().toString());
+				if (location.getResolution() != null)
+					row.addProperty("resolution", location.getResolution());
+				rows.add(row);
+			}
+			JsonObject tableState = new JsonObject();
+			tableState.add("rows", rows);
+			writeUserData(Map.of(SETTINGS, table.exportSettings(), TABLE, tableState));
+		}
+
+		public void saveResolutions(HashResolutionResultStore resultStore, long[] hashesAfterTransform) {
+			String algorithm = resultStore.getAlgorithm();
+			HashDBApi api = new HashDBApi();
+			JsonObject resolutions = read(RESOLUTIONS);
+			if (!resolutions.has(algorithm)) {
+				JsonObject byAlgorithm = new JsonObject();
+				byAlgorithm.add("hashes", new JsonObject());
+				byAlgorithm.add("modules", new JsonObject());
+				resolutions.add(algorithm, byAlgorithm);
+			}
+			JsonObject hashes = resolutions.getAsJsonObject(algorithm).getAsJsonObject("hashes");
+			JsonObject modules = resolutions.getAsJsonObject(algorithm).getAsJsonObject("modules");
+			for (long hash : hashesAfterTransform) {
+				ArrayList<HashDBApi.HashInfo> hashInfos = resolutionCache.getHash(algorithm, hash);
+				if (hashInfos != null)
+					hashes.add(Long.toString(hash), api.hashInfoToJson(hashInfos));
+			}
+			for (String[] module : resultStore.getExpandedModules()) {
+				ArrayList<HashDBApi.HashInfo> hashInfos = resolutionCache.getModule(module[0], algorithm, module[1]);
+				if (hashInfos != null)
+					modules.add(String.format("%s/%s", module[0], module[1]), api.hashInfoToJson(hashInfos));
+			}
+			write(Map.of(RESOLUTIONS, resolutions));
+		}
+
+		public void restore(HashTable table) {
+			HashDBApi api = new HashDBApi();
+			JsonObject resolutions = read(RESOLUTIONS);
+			for (String algorithm : resolutions.keySet()) {
+				JsonObject byAlgorithm = resolutions.getAsJsonObject(algorithm);
+				for (Map.Entry<String, JsonElement> entry : byAlgorithm.getAsJsonObject("hashes").entrySet()) {
+					resolutionCache.putHash(algorithm, Long.parseLong(entry.getKey()),
+							api.parseHashInfoFromJson(entry.getValue().getAsJsonObject()));
+				}
+				for (Map.Entry<String, JsonElement> entry : byAlgorithm.getAsJsonObject("modules").entrySet()) {
+					String[] module = entry.getKey().split("/", 2);
+					resolutionCache.putModule(module[0], algorithm, module[1],
+							api.parseHashInfoFromJson(entry.getValue().getAsJsonObject()));
+				}
+			}
+
+			JsonObject settings = read(SETTINGS);
+			if (settings.size() > 0)
+				table.importSettings(settings);
+
+			JsonObject tableState = read(TABLE);
+			if (!tableState.has("rows"))
+				return;
+			for (JsonElement element : tableState.getAsJsonArray("rows")) {
+				JsonObject row = element.getAsJsonObject();
+				Address address = null;
+				if (row.has("address"))
+					address = program.getAddressFactory().getAddress(row.get("address").getAsString());
+				HashLocation location = new HashLocation(address, row.get("hash").getAsLong());
+				if (row.has("resolution"))
+					location.resolution = row.get("resolution").getAsString();
+				table.add(location);
+			}
+		}
+	}
+
 	public class ShowErrorInUi extends Exception {
 		public ShowErrorInUi(String errorMessage) {
 			super(errorMessage);
@@ -1340,11 +5319,11 @@ public class HashDB extends GhidraScript {
 		for (int k = 0; k < hashLocations.size(); k++) {
 			long baseHash = hashLocations.get(k).getHashAsLong();
 			ret[k] = transformHash(baseHash);
-			if (dialog.isTransformationInvertible()) {
+			if (getSettings().isTransformationInvertible()) {
 				long inverse = invertHashTransformation(ret[k]);
 				if (inverse != baseHash) {
-					if (!dialog.resolveEntireModules()) {
-						dialog.setTransformationNotInvertible();
+					if (!getSettings().resolveEntireModules()) {
+						getSettings().setTransformationNotInvertible();
 						logDebugMessage("This transformation is not invertible; I fixed it for you.");
 					} else {
 						throw new ShowErrorInUi(
@@ -1352,7 +5331,7 @@ public class HashDB extends GhidraScript {
 					}
 				}
 			}
-			if (GUI_DEBUGGING) {
+			if (isGuiDebugging()) {
 				logDebugMessage(String.format("Translated hash for 0x%08X is 0x%08X.", baseHash, ret[k]));
 			}
 		}
@@ -1370,34 +5349,189 @@ public class HashDB extends GhidraScript {
 		return taskHunt;
 	}
 
+	static final int CACHED_HUNTS = 64;
+	static Map<String, ArrayList<String>> huntCache = new LinkedHashMap<String, ArrayList<String>>(CACHED_HUNTS,
+			0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ArrayList<String>> eldest) {
+			return size() > CACHED_HUNTS;
+		}
+	};
+
+	/**
+	 * @return a digest of the set of hashes, the transformation that produced them and everything
+	 *         else the outcome of a hunt depends on.
+	 */
+	private String huntFingerprint(long[] hashesAfterTransform, double threshold) throws Exception {
+		java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		for (long hash : Arrays.stream(hashesAfterTransform).distinct().sorted().toArray()) {
+			buffer.clear();
+			buffer.putLong(hash);
+			digest.update(buffer.array());
+		}
+		String context = String.format("\n%s\n%s\n%f", getSettings().getServiceUrl(),
+				getSettings().getTransformation(), threshold);
+		digest.update(context.getBytes(StandardCharsets.UTF_8));
+		return String.format("%064x", new BigInteger(1, digest.digest()));
+	}
+
 	private String guessAlgorithm(TaskMonitor tm, long taskHunt, long[] hashesAfterTransform) throws Exception {
 		tm.setMessage("guessing hash function");
-		ArrayList<String> algorithms = new HashDBApi().hunt(hashesAfterTransform, dialog.getAlgorithmThreshold());
+		double threshold = getSettings().getAlgorithmThreshold();
+		String fingerprint = huntFingerprint(hashesAfterTransform, threshold);
+		ArrayList<String> algorithms;
+		synchronized (huntCache) {
+			algorithms = huntCache.get(fingerprint);
+		}
+		metrics.recordLookup("hunt", algorithms != null);
+		if (algorithms == null) {
+			algorithms = new HashDBApi().withMonitor(tm).progressiveHunt(hashesAfterTransform, threshold,
+					Long.parseUnsignedLong(fingerprint.substring(0, 16), 16), (hitRates, done, total) -> {
+						String ranking = hitRates.entrySet().stream().limit(3)
+								.map(hit -> String.format("%s %.0f%%", hit.getKey(), 100 * hit.getValue()))
+								.collect(Collectors.joining(", "));
+						tm.setMessage(String.format("guessing hash function (%d of %d hashes): %s", done, total,
+								ranking.isEmpty() ? "no hits yet" : ranking));
+					});
+			synchronized (huntCache) {
+				huntCache.put(fingerprint, algorithms);
+			}
+		}
+		algorithms = new ArrayList<String>(algorithms);
 		if (algorithms.size() == 0) {
 			throw new ShowErrorInUi("could not identify any hashing algorithms");
 		} else if (algorithms.size() == 1) {
 			String algorithm = algorithms.iterator().next();
-			dialog.addNewHashAlgorithm(algorithm, true);
+			getSettings().addNewHashAlgorithm(algorithm, true);
 			tm.incrementProgress(taskHunt);
 			return algorithm;
 		} else {
 			for (String a : algorithms)
-				dialog.addNewHashAlgorithm(a, false);
+				getSettings().addNewHashAlgorithm(a, false);
 			throw new ShowErrorInUi("please select an algorithm");
 		}
 	}
 
+	/**
+	 * Scores the modules that "Resolve Entire Modules" may download by how likely the program uses
+	 * them: imported modules and modules named in a string of the program are likely right away,
+	 * other modules become likely once several hashes of the table resolve to them. A query expands
+	 * a module as soon as it becomes likely; modules that are still unlikely at the end of the run
+	 * are only logged and are not fetched later.
+	 */
+	static class ModuleRanking {
+		static final int IMPORT_SCORE = 4;
+		static final int STRING_SCORE = 2;
+		static final int LIKELY_SCORE = 2;
+		private static final Pattern MODULE_NAME = Pattern.compile("([A-Za-z0-9_\\-]+)\\.(dll|sys|drv|exe)\\b",
+				Pattern.CASE_INSENSITIVE);
+
+		private final HashMap<String, Integer> scores = new HashMap<String, Integer>();
+
+		ModuleRanking(Program program) {
+			for (String library : program.getExternalManager().getExternalLibraryNames()) {
+				if (!library.equals(Library.UNKNOWN))
+					addScore(library, IMPORT_SCORE);
+			}
+			DataIterator data = program.getListing().getDefinedData(true);
+			while (data.hasNext()) {
+				Data item = data.next();
+				if (!item.hasStringValue() || !(item.getValue() instanceof String))
+					continue;
+				Matcher matcher = MODULE_NAME.matcher((String) item.getValue());
+				while (matcher.find()) {
+					addScore(matcher.group(1), STRING_SCORE);
+				}
+			}
+		}
+
+		private void addScore(String module, int score) {
+			scores.merge(NameDictionary.normalizeModule(module), score, Integer::sum);
+		}
+
+		void addHit(String module) {
+			addScore(module, 1);
+		}
+
+		boolean isLikely(String module) {
+			return scores.getOrDefault(NameDictionary.normalizeModule(module), 0) >= LIKELY_SCORE;
+		}
+	}
+
+	/**
+	 * Orders the rows of a query by what the analyst is most likely waiting for: rows scrolled into
+	 * view and hashes found in the function at the cursor come first, then the other rows by how
+	 * often their location is referenced, directly or through calls to its function. Ties keep the
+	 * table order.
+	 *
+	 * @return the indices into hashLocations in the order in which they should be resolved, split
+	 *         into the visible and focused rows and the other rows.
+	 */
+	private int[][] prioritize(ArrayList<HashDB.HashLocation> hashLocations) {
+		Set<Long> visible = dialog != null && getSettings() == dialog ? dialog.getVisibleHashes() : Set.of();
+		Function focus = getFocusedFunction();
+		ReferenceManager references = currentProgram.getReferenceManager();
+		FunctionManager functions = currentProgram.getFunctionManager();
+		boolean[] urgent = new boolean[hashLocations.size()];
+		int[] referenceCounts = new int[hashLocations.size()];
+		for (int k = 0; k < hashLocations.size(); k++) {
+			HashLocation row = hashLocations.get(k);
+			Address address = row.getAddress();
+			urgent[k] = visible.contains(row.getHashAsLong());
+			if (address == null)
+				continue;
+			urgent[k] |= focus != null && focus.getBody().contains(address);
+			referenceCounts[k] = references.getReferenceCountTo(address);
+			Function function = functions.getFunctionContaining(address);
+			if (function != null)
+				referenceCounts[k] += references.getReferenceCountTo(function.getEntryPoint());
+		}
+		int[] order = IntStream.range(0, hashLocations.size()).boxed()
+				.sorted(Comparator.comparing((Integer k) -> !urgent[k]).thenComparing(k -> -referenceCounts[k]))
+				.mapToInt(Integer::intValue).toArray();
+		int urgentCount = (int) IntStream.range(0, urgent.length).filter(k -> urgent[k]).count();
+		return new int[][] { Arrays.copyOfRange(order, 0, urgentCount),
+				Arrays.copyOfRange(order, urgentCount, order.length) };
+	}
+
+	/**
+	 * @return the function at the cursor of the listing or decompiler, or null.
+	 */
+	private Function getFocusedFunction() {
+		Address address = currentAddress;
+		PluginTool tool = state.getTool();
+		CodeViewerService codeViewer = tool == null ? null : tool.getService(CodeViewerService.class);
+		if (codeViewer != null && codeViewer.getCurrentLocation() != null)
+			address = codeViewer.getCurrentLocation().getAddress();
+		return address == null ? null : currentProgram.getFunctionManager().getFunctionContaining(address);
+	}
+
 	private HashResolutionResultStore createResultStore(TaskMonitor tm, String algorithm,
-			ArrayList<HashDB.HashLocation> hashLocations, long[] hashesAfterTransform) throws Exception {
-		HashDBApi api = new HashDBApi();
-		HashResolutionResultStore resultStore = new HashResolutionResultStore();
+			ArrayList<HashDB.HashLocation> hashLocations, long[] hashesAfterTransform, RunJournal journal)
+			throws Exception {
+		HashDBApi api = new HashDBApi().withMonitor(tm);
+		HashResolutionResultStore resultStore = new HashResolutionResultStore(algorithm);
 		HashSet<String> observedPermuations = new HashSet<String>();
-		String permutation = dialog.getCurrentPermutation();
-		for (int k = 0; k < hashesAfterTransform.length; k++) {
+		String permutation = getSettings().getCurrentPermutation();
+		ModuleRanking ranking = null;
+		LinkedHashMap<String, String[]> pendingModules = new LinkedHashMap<String, String[]>();
+		if (getSettings().resolveEntireModules() && getSettings().narrowModuleExpansion()) {
+			tm.setMessage("ranking modules");
+			ranking = new ModuleRanking(currentProgram);
+		}
+		int[][] tiers = prioritize(hashLocations);
+		int[] order = IntStream.concat(Arrays.stream(tiers[0]), Arrays.stream(tiers[1])).toArray();
+		for (int position = 0; position < order.length; position++) {
+			int k = order[position];
 			HashLocation tableEntry = hashLocations.get(k);
 			if (tm.isCancelled()) {
 				break;
 			}
+			// module expansions are speculative, so they wait until the visible and focused rows are
+			// resolved; after that a module is expanded as soon as it qualifies, and answers later rows
+			if (position >= tiers[0].length)
+				expandPendingModules(api, resultStore, journal, algorithm, ranking, pendingModules, tm);
 			tm.setMessage(String.format("resolving hash 0x%08X (base value 0x%08x)", hashesAfterTransform[k],
 					tableEntry.getHashAsLong()));
 			String existingResolution = resultStore.getApiName(hashesAfterTransform[k]);
@@ -1407,29 +5541,44 @@ public class HashDB extends GhidraScript {
 				continue;
 			}
 
-			ArrayList<HashDBApi.HashInfo> resolved = api.resolve(algorithm, hashesAfterTransform[k], permutation);
+			ArrayList<HashDBApi.HashInfo> unfiltered;
+			try {
+				unfiltered = api.lookup(algorithm, hashesAfterTransform[k]);
+			} catch (ServiceUnavailableException e) {
+				resultStore.addUnavailable(tableEntry.hashValue, hashesAfterTransform[k]);
+				tm.incrementProgress(1);
+				continue;
+			} catch (CancelledException e) {
+				break;
+			}
+			// the journal feeds the shared cache on resume, so it keeps the response of every permutation
+			journal.recordHash(hashesAfterTransform[k], api.hashInfoToJson(unfiltered));
+			ArrayList<HashDBApi.HashInfo> resolved = api.filterPermutation(unfiltered, hashesAfterTransform[k],
+					permutation);
 			for (HashDBApi.HashInfo hi : resolved) {
 				if (HashDB.HashDBApi.ApiHashInfo.class.isInstance(hi)) {
 					HashDB.HashDBApi.ApiHashInfo ahi = (HashDB.HashDBApi.ApiHashInfo) hi;
 					if (!observedPermuations.contains(ahi.permutation)) {
 						observedPermuations.add(ahi.permutation);
-						dialog.addNewPermutation(ahi.permutation, true);
+						getSettings().addNewPermutation(ahi.permutation, true);
 					}
 				}
 			}
 
 			if (resolved.size() == 0) {
 				resultStore.addNoMatch(tableEntry.hashValue, hashesAfterTransform[k]);
-				logDebugMessage(String.format("No resolution known for %s.", tableEntry.getHashValue()));
+				logVerbose("No resolution known for %s.", tableEntry.getHashValue());
+				logger.count("%d hashes had no known resolution.");
 				tm.incrementProgress(1);
 				continue;
 			}
 
 			if (resolved.size() > 1) {
 				resultStore.addCollision(tableEntry.hashValue, hashesAfterTransform[k], resolved);
-				if (GUI_DEBUGGING) {
-					logDebugMessage(String.format("Hash collision for %s, skipping.", tableEntry.getHashValue()));
+				if (isGuiDebugging()) {
+					logVerbose("Hash collision for %s, skipping.", tableEntry.getHashValue());
 				}
+				logger.count("%d hashes collided and were skipped.");
 				tm.incrementProgress(1);
 				continue;
 			}
@@ -1444,17 +5593,16 @@ public class HashDB extends GhidraScript {
 					continue;
 				}
 
-				if (dialog.resolveEntireModules()) {
+				resultStore.addResolution(tableEntry.hashValue, hashesAfterTransform[k], inputHashInfo);
+				if (getSettings().resolveEntireModules()) {
 					for (String module : apiInputHashInfo.modules) {
 						if (permutation != null && apiInputHashInfo.permutation.compareTo(permutation) != 0)
 							continue;
-						for (HashDBApi.HashInfo hashInfo : api.module(module, algorithm,
-								apiInputHashInfo.permutation)) {
-							resultStore.addResolution(invertHashTransformation(hashInfo.hash), hashInfo.hash, hashInfo);
-						}
+						if (ranking != null)
+							ranking.addHit(module);
+						pendingModules.putIfAbsent(String.format("%s/%s", module, apiInputHashInfo.permutation),
+								new String[] { module, apiInputHashInfo.permutation });
 					}
-				} else {
-					resultStore.addResolution(tableEntry.hashValue, hashesAfterTransform[k], inputHashInfo);
 				}
 			} else if (HashDB.HashDBApi.NonApiHashInfo.class.isInstance(inputHashInfo)) {
 				HashDB.HashDBApi.NonApiHashInfo nonApiInputHashInfo = (HashDB.HashDBApi.NonApiHashInfo) inputHashInfo;
@@ -1463,7 +5611,57 @@ public class HashDB extends GhidraScript {
 			tm.incrementProgress(1);
 		}
 
-		return resultStore;
+		expandPendingModules(api, resultStore, journal, algorithm, ranking, pendingModules, tm);
+		ArrayList<String> skippedModules = new ArrayList<String>();
+		for (String[] module : pendingModules.values()) {
+			skippedModules.add(module[0]);
+		}
+		if (!tm.isCancelled() && skippedModules.size() > 0) {
+			logDebugMessage(String.format("Skipped %d unlikely modules: %s", skippedModules.size(),
+					String.join(", ", skippedModules)));
+		}
+
+		resultStore.orderBy(hashesAfterTransform);
+		return resultStore;
+	}
+
+	/**
+	 * Expands the pending modules that are likely or already cached, and keeps the others pending.
+	 */
+	private void expandPendingModules(HashDBApi api, HashResolutionResultStore resultStore, RunJournal journal,
+			String algorithm, ModuleRanking ranking, LinkedHashMap<String, String[]> pendingModules, TaskMonitor tm)
+			throws Exception {
+		Iterator<String[]> pending = pendingModules.values().iterator();
+		while (pending.hasNext() && !tm.isCancelled()) {
+			String[] module = pending.next();
+			boolean cached = resolutionCache.getModule(module[0], algorithm, module[1]) != null;
+			if (ranking == null || cached || ranking.isLikely(module[0])) {
+				pending.remove();
+				tm.setMessage(String.format("resolving module %s", module[0]));
+				expandModule(api, resultStore, journal, module[0], algorithm, module[1]);
+			}
+		}
+	}
+
+	private void expandModule(HashDBApi api, HashResolutionResultStore resultStore, RunJournal journal, String module,
+			String algorithm, String permutation) throws Exception {
+		boolean expanded = !resultStore.addExpandedModule(module, permutation);
+		metrics.recordLookup("expansion", expanded);
+		if (expanded)
+			return;
+		ArrayList<HashDBApi.HashInfo> hashInfos;
+		try {
+			hashInfos = api.module(module, algorithm, permutation);
+		} catch (ServiceUnavailableException e) {
+			logDebugMessage(String.format("Not expanding module %s: %s", module, e.getMessage()));
+			return;
+		} catch (CancelledException e) {
+			return;
+		}
+		journal.recordModule(module, permutation, api.hashInfoToJson(hashInfos));
+		for (HashDBApi.HashInfo hashInfo : hashInfos) {
+			resultStore.addResolution(invertHashTransformation(hashInfo.hash), hashInfo.hash, hashInfo);
+		}
 	}
 
 	private void handleCollisions(TaskMonitor tm, ArrayList<HashDB.HashLocation> hashLocations,
@@ -1478,7 +5676,7 @@ public class HashDB extends GhidraScript {
 					tableEntry.resolution = result.getSingleHashInfo().getResolutionName();
 				}
 			}
-			dialog.addNewPermutation(match, true);
+			getSettings().addNewPermutation(match, true);
 			logDebugMessage(String.format("The permutation \"%s\" was auto-selected because it matched all.", match));
 		} else {
 			logDebugMessage("Permutations could not be disambiguated, please select one manually.");
@@ -1486,48 +5684,115 @@ public class HashDB extends GhidraScript {
 	}
 
 	private String resolveHashes(ArrayList<HashDB.HashLocation> hashLocations, TaskMonitor tm) throws Exception {
-		long[] hashesAfterTransform = transformHashes(hashLocations);
-		String algorithm = dialog.getCurrentHashAlgorithm();
+		metrics = new Metrics("resolve");
+		startLogging("resolve");
+		RunJournal journal = new RunJournal();
+		boolean complete = false;
+		try {
+			long[] hashesAfterTransform;
+			try (Metrics.Phase phase = metrics.phase("transformHashes")) {
+				hashesAfterTransform = transformHashes(hashLocations);
+			}
+			String algorithm = getSettings().getCurrentHashAlgorithm();
 
-		long taskHunt = initTaskMonitor(tm);
-		if (algorithm == null) {
-			algorithm = guessAlgorithm(tm, taskHunt, hashesAfterTransform);
+			long taskHunt = initTaskMonitor(tm);
+			if (algorithm == null) {
+				try (Metrics.Phase phase = metrics.phase("guessAlgorithm")) {
+					algorithm = guessAlgorithm(tm, taskHunt, hashesAfterTransform);
+				}
+			}
+			journal = openJournal(algorithm, hashLocations);
+			HashResolutionResultStore resultStore;
+			try (Metrics.Phase phase = metrics.phase("createResultStore")) {
+				resultStore = createResultStore(tm, algorithm, hashLocations, hashesAfterTransform, journal);
+			}
+			boolean resolvedAll = !tm.isCancelled() && resultStore.getUnavailableCount() == 0;
+			if (resultStore.hasCollisions()) {
+				try (Metrics.Phase phase = metrics.phase("handleCollisions")) {
+					handleCollisions(tm, hashLocations, hashesAfterTransform, resultStore);
+				}
+			}
+			try (Metrics.Phase phase = metrics.phase("saveState")) {
+				ProgramStateStore stateStore = new ProgramStateStore(currentProgram);
+				stateStore.saveResolutions(resultStore, hashesAfterTransform);
+				if (getSettings() == dialog)
+					stateStore.saveTable(dialog);
+			}
+			String result;
+			try (Metrics.Phase phase = metrics.phase("processResult")) {
+				result = processResult(resultStore, tm);
+			}
+			complete = resolvedAll;
+			return String.format("%s %s", result.trim(), metrics.summary());
+		} finally {
+			journal.close(complete);
+			metrics.finish();
+			writeMetricsReport();
+			logger.endRun();
 		}
-		HashResolutionResultStore resultStore = createResultStore(tm, algorithm, hashLocations, hashesAfterTransform);
-		if (resultStore.hasCollisions()) {
-			handleCollisions(tm, hashLocations, hashesAfterTransform, resultStore);
+	}
+
+	/**
+	 * Starts the journal of a query in the dialog; headless runs and failures to create the file get
+	 * a journal that records nothing.
+	 */
+	private RunJournal openJournal(String algorithm, ArrayList<HashDB.HashLocation> hashLocations) {
+		if (dialog == null || getSettings() != dialog)
+			return new RunJournal();
+		JsonObject settings = dialog.exportSettings();
+		settings.entrySet().removeIf(entry -> entry.getValue().isJsonNull());
+		settings.addProperty("algorithm", algorithm);
+		if (dialog.getCurrentPermutation() == null)
+			settings.addProperty("permutation", "");
+		try {
+			return new RunJournal(RunJournal.fileFor(currentProgram), settings, hashLocations);
+		} catch (IOException e) {
+			logDebugMessage("Unable to create the journal of this run:", e);
+			return new RunJournal();
 		}
-		tm.setMessage(String.format("updating data type \"%s\"", dialog.getStorageName()));
-		return processResult(resultStore);
 	}
 
-	private String processResult(HashResolutionResultStore resultStore) throws Exception {
-		DataTypeFactory dataTypeFactory = new DataTypeFactory(dialog.getOutputMethod());
-		String hashStorageName = dialog.getStorageName();
-		String nonApiEnumName = dialog.getNonApiEnumName();
+	private String processResult(HashResolutionResultStore resultStore, TaskMonitor tm) throws Exception {
+		tm.setMessage("building data types");
+		DataTypeFactory dataTypeFactory = new DataTypeFactory(getSettings().getOutputMethod());
+		String hashStorageName = getSettings().getStorageName();
+		String nonApiEnumName = getSettings().getNonApiEnumName();
 		StringBuilder sb = new StringBuilder();
+		ArrayList<PendingType> pendingTypes = new ArrayList<PendingType>();
 		ArrayList<HashResolutionResult> nonApiResolutions = resultStore.nonApiResolutions();
 		if (nonApiResolutions.size() > 0) {
-			dataTypeFactory.commitDataType(dataTypeFactory.commitResultsToEnum(nonApiResolutions, nonApiEnumName));
+			pendingTypes.add(dataTypeFactory.buildEnum(nonApiResolutions, nonApiEnumName));
 			sb.append(String.format("Added %d values to data type \"%s\". ", nonApiResolutions.size(), nonApiEnumName));
 		}
 		if (resultStore.resolvedCount() > 0) {
-			dataTypeFactory.commitApiResults(hashStorageName, resultStore);
+			pendingTypes.add(dataTypeFactory.buildApiType(hashStorageName, resultStore));
 			sb.append(String.format("Added %d values to data type \"%s\". ", resultStore.resolvedCount(),
 					hashStorageName));
 		}
-		if (resultStore.hasCollisions() && dialog.getCurrentPermutation() == null) {
+		if (pendingTypes.size() > 0) {
+			// a cancelled query still stores what it has resolved; the commit can be cancelled on its own
+			tm.clearCanceled();
+			DataTypeCommitCommand command = new DataTypeCommitCommand(pendingTypes);
+			if (!command.applyTo(currentProgram, tm)) {
+				sb.append(command.getStatusMsg()).append(" ");
+			}
+		}
+		if (resultStore.hasCollisions() && getSettings().getCurrentPermutation() == null) {
 			sb.append("Select a permutation to resolve remaining hashes. ");
 		}
+		if (resultStore.getUnavailableCount() > 0) {
+			sb.append(String.format("%d hashes were skipped because HashDB is unavailable. ",
+					resultStore.getUnavailableCount()));
+		}
 		return sb.toString().trim();
 	}
 
 	private long transformHash(long hash) throws Exception {
-		return applyTransformation(hash, dialog.getTransformation());
+		return applyTransformation(hash, getSettings().getTransformation());
 	}
 
 	private long invertHashTransformation(long hash) throws Exception {
-		return applyTransformation(hash, dialog.getTransformationInverse());
+		return applyTransformation(hash, getSettings().getTransformationInverse());
 	}
 
 	private long applyTransformation(long hash, String transformation) throws Exception {
@@ -1538,12 +5803,754 @@ public class HashDB extends GhidraScript {
 		if (result < 0) {
 			result = 0xFFFFFFFFL - ~result;
 		}
-		if (PY_DEBUGGING) {
-			println(String.format("%d became %d", hash, result));
+		if (isPyDebugging()) {
+			logDebugMessage(String.format("%d became %d", hash, result));
 		}
 		return result;
 	}
 
+	/*-
+	 * A local stand-in for the HashDB web service that answers from a fixture directory, so that
+	 * load tests and benchmarks are reproducible without network access. Start it headless:
+	 *
+	 *   analyzeHeadless <dir> <project> -process <program> -postScript HashDB.java serve
+	 *       fixtures=<directory> [port=8000] [upstream=<url>] [latency=<ms>] [jitter=<ms>]
+	 *       [errors=<rate>] [duration=<seconds>]
+	 *
+	 * Fixtures are laid out like the API: hash/<alg>/<hash>.json, module/<module>/<alg>/<perm>.json
+	 * and hunt/<sha-256 of the request body>.json. Unknown hashes and modules are answered with an
+	 * empty list; hunt requests without a recording are answered from the hash fixtures. With an
+	 * upstream, the server acts as a recording proxy and stores every response it did not have yet.
+	 * Latency, jitter and error rate are injected before every response.
+	 */
+	class StandInServer {
+		private static final String SAFE_COMPONENT = "[A-Za-z0-9_.\\-]+";
+
+		private File fixtures = null;
+		private int port = 8000;
+		private String upstream = null;
+		private long latency = 0;
+		private long jitter = 0;
+		private double errorRate = 0;
+		private long duration = 0;
+
+		private HttpServer server = null;
+		private ExecutorService executor = null;
+
+		StandInServer(File fixtures, int port) {
+			this.fixtures = fixtures;
+			this.port = port;
+		}
+
+		StandInServer(String[] args) {
+			for (int k = 1; k < args.length; k++) {
+				String[] option = args[k].split("=", 2);
+				if (option.length != 2)
+					throw new IllegalArgumentException(String.format("unknown server option: %s", args[k]));
+				switch (option[0]) {
+				case "fixtures":
+					fixtures = new File(option[1]);
+					break;
+				case "port":
+					port = Integer.parseInt(option[1]);
+					break;
+				case "upstream":
+					upstream = option[1];
+					break;
+				case "latency":
+					latency = Long.parseLong(option[1]);
+					break;
+				case "jitter":
+					jitter = Long.parseLong(option[1]);
+					break;
+				case "errors":
+					errorRate = Double.parseDouble(option[1]);
+					break;
+				case "duration":
+					duration = Long.parseLong(option[1]);
+					break;
+				default:
+					throw new IllegalArgumentException(String.format("unknown server option: %s", args[k]));
+				}
+			}
+			if (fixtures == null)
+				throw new IllegalArgumentException("the server needs a fixture directory (fixtures=<directory>)");
+		}
+
+		public void run() throws Exception {
+			start();
+			println(String.format("[HashDB] Serving %s on %s%s", fixtures, getUrl(),
+					upstream == null ? "" : String.format(", recording from %s", upstream)));
+			try {
+				long deadline = duration > 0 ? System.currentTimeMillis() + duration * 1000 : Long.MAX_VALUE;
+				while (!monitor.isCancelled() && System.currentTimeMillis() < deadline) {
+					Thread.sleep(250);
+				}
+			} finally {
+				stop();
+			}
+		}
+
+		public void start() throws IOException {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+			executor = Executors.newCachedThreadPool();
+			server.setExecutor(executor);
+			server.createContext("/", this::handle);
+			server.start();
+		}
+
+		public String getUrl() {
+			return String.format("http://%s:%d", server.getAddress().getHostString(), server.getAddress().getPort());
+		}
+
+		public void stop() {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+
+		private void handle(HttpExchange exchange) throws IOException {
+			try {
+				byte[] request = exchange.getRequestBody().readAllBytes();
+				String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+				injectLatency();
+				if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+					respond(exchange, 503, "{\"error\": \"injected failure\"}");
+					return;
+				}
+				for (String component : path) {
+					if (!component.matches(SAFE_COMPONENT) || component.equals("..")) {
+						respond(exchange, 400, "{\"error\": \"invalid path\"}");
+						return;
+					}
+				}
+				String method = exchange.getRequestMethod();
+				if (method.equals("GET") && path.length == 3 && path[0].equals("hash")) {
+					answer(exchange, method, request, new File(fixtures, String.join(File.separator, path) + ".json"),
+							"{\"hashes\": []}");
+				} else if (method.equals("GET") && path.length == 4 && path[0].equals("module")) {
+					answer(exchange, method, request, new File(fixtures, String.join(File.separator, path) + ".json"),
+							"{\"hashes\": []}");
+				} else if (method.equals("POST") && path.length == 1 && path[0].equals("hunt")) {
+					File recording = new File(new File(fixtures, "hunt"), String.format("%s.json", sha256(request)));
+					answer(exchange, method, request, recording, null);
+				} else {
+					respond(exchange, 404, "{\"error\": \"not found\"}");
+				}
+			} catch (Exception e) {
+				logDebugMessage(String.format("stand-in server failed on %s", exchange.getRequestURI()), e);
+				respond(exchange, 500, "{\"error\": \"internal error\"}");
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private void answer(HttpExchange exchange, String method, byte[] request, File fixture, String fallback)
+				throws Exception {
+			if (fixture.isFile()) {
+				respond(exchange, 200, new String(Files.readAllBytes(fixture.toPath()), StandardCharsets.UTF_8));
+				return;
+			}
+			if (upstream != null) {
+				String endpoint = exchange.getRequestURI().getPath().replaceAll("^/+", "");
+				String response;
+				try {
+					response = new HashDBApi(upstream).httpQuery(method, endpoint,
+							method.equals("POST") ? request : null);
+				} catch (IOException e) {
+					respond(exchange, 502, "{\"error\": \"upstream request failed\"}");
+					return;
+				}
+				Files.createDirectories(fixture.getParentFile().toPath());
+				File temp = new File(fixture.getPath() + ".tmp");
+				Files.write(temp.toPath(), response.getBytes(StandardCharsets.UTF_8));
+				Files.move(temp.toPath(), fixture.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				respond(exchange, 200, response);
+				return;
+			}
+			respond(exchange, 200, fallback != null ? fallback : hunt(request));
+		}
+
+		/**
+		 * Answers a hunt request from the hash fixtures: the hit rate of an algorithm is the share
+		 * of requested hashes for which it has a non-empty fixture.
+		 */
+		private String hunt(byte[] request) {
+			JsonArray hashes = JsonParser.parseString(new String(request, StandardCharsets.UTF_8)).getAsJsonObject()
+					.get("hashes").getAsJsonArray();
+			JsonArray hits = new JsonArray();
+			File[] algorithms = new File(fixtures, "hash").listFiles(File::isDirectory);
+			if (algorithms != null && hashes.size() > 0) {
+				Arrays.sort(algorithms);
+				for (File algorithm : algorithms) {
+					int count = 0;
+					for (JsonElement hash : hashes) {
+						File fixture = new File(algorithm, String.format("%d.json", hash.getAsLong()));
+						if (!fixture.isFile())
+							continue;
+						try {
+							String response = new String(Files.readAllBytes(fixture.toPath()), StandardCharsets.UTF_8);
+							if (JsonParser.parseString(response).getAsJsonObject().get("hashes").getAsJsonArray()
+									.size() > 0)
+								count++;
+						} catch (IOException e) {
+							continue;
+						}
+					}
+					if (count == 0)
+						continue;
+					JsonObject hit = new JsonObject();
+					hit.addProperty("algorithm", algorithm.getName());
+					hit.addProperty("count", count);
+					// like the service, the hit rate is a fraction between 0 and 1, not a percentage
+					hit.addProperty("hitrate", (double) count / hashes.size());
+					hits.add(hit);
+				}
+			}
+			JsonObject ret = new JsonObject();
+			ret.add("hits", hits);
+			return ret.toString();
+		}
+
+		private void injectLatency() throws InterruptedException {
+			long delay = latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+			if (delay > 0)
+				Thread.sleep(delay);
+		}
+
+		private String sha256(byte[] data) throws Exception {
+			byte[] digest = java.security.MessageDigest.getInstance("SHA-256").digest(data);
+			return String.format("%064x", new BigInteger(1, digest));
+		}
+
+		private void respond(HttpExchange exchange, int status, String body) throws IOException {
+			byte[] data = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, data.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(data);
+			}
+		}
+	}
+
+	/*-
+	 * Drives scanning, selection import and resolution over synthetic programs against an in-process
+	 * stand-in server, and reports the end-to-end throughput:
+	 *
+	 *   analyzeHeadless <dir> <project> -process <program> -postScript HashDB.java benchmark-e2e
+	 *       [sizes=100,1000,10000]
+	 *
+	 * Every synthetic x86 program contains N calls to a deobfuscator with constant arguments, pushed
+	 * either directly or through a register, and an array of M dwords. All combinations of N and M
+	 * are measured. The resolution cache is emptied for each program, so every hash goes to the server.
+	 */
+	class EndToEndBenchmark {
+		private static final long TEXT_BASE = 0x401000L;
+		private static final long DATA_BASE = 0x800000L;
+		private static final int CALLS_PER_FUNCTION = 100;
+		private static final String ALGORITHM = "synthetic";
+
+		private final long startedAt = System.currentTimeMillis();
+		private int[] sizes = { 100, 1000, 10000 };
+
+		EndToEndBenchmark(String[] args) {
+			for (int k = 1; k < args.length; k++) {
+				String[] option = args[k].split("=", 2);
+				if (option.length == 2 && option[0].equals("sizes")) {
+					sizes = Arrays.stream(option[1].split(",")).mapToInt(size -> Integer.parseInt(size.trim()))
+							.toArray();
+				} else {
+					throw new IllegalArgumentException(String.format("unknown benchmark option: %s", args[k]));
+				}
+			}
+		}
+
+		private long callHash(int k) {
+			return (k * 0x9E3779B1L + 0x12345L) & 0xFFFFFFFFL;
+		}
+
+		private long arrayHash(int k) {
+			return (k * 0x85EBCA6BL + 0x6789AL) & 0xFFFFFFFFL;
+		}
+
+		public void run() throws Exception {
+			int maxSize = Arrays.stream(sizes).max().orElse(0);
+			File fixtures = Files.createTempDirectory("hashdb-e2e").toFile();
+			Program originalProgram = currentProgram;
+			ResolutionCache originalCache = resolutionCache;
+			StandInServer server = new StandInServer(fixtures, 0);
+			JsonArray results = new JsonArray();
+			try {
+				writeFixtures(fixtures, maxSize);
+				server.start();
+				for (int calls : sizes) {
+					for (int arraySize : sizes) {
+						monitor.checkCanceled();
+						Program program = createProgram(calls, arraySize);
+						try {
+							currentProgram = program;
+							resolutionCache = new ResolutionCache();
+							HeadlessSettings settings = new HeadlessSettings();
+							settings.serviceUrl = server.getUrl();
+							headlessSettings = settings;
+							results.add(measure(calls, arraySize));
+						} finally {
+							currentProgram = originalProgram;
+							resolutionCache = originalCache;
+							headlessSettings = null;
+							program.release(this);
+						}
+					}
+				}
+			} finally {
+				server.stop();
+				try (java.util.stream.Stream<java.nio.file.Path> walk = Files.walk(fixtures.toPath())) {
+					walk.sorted(java.util.Comparator.reverseOrder()).map(java.nio.file.Path::toFile)
+							.forEach(File::delete);
+				}
+			}
+			JsonObject report = new JsonObject();
+			report.add("results", results);
+			File output = writeReport("benchmark-e2e", startedAt, report);
+			println(String.format("[HashDB] Wrote end-to-end benchmark report to %s", output));
+		}
+
+		private void writeFixtures(File fixtures, int size) throws IOException {
+			HashDBApi api = new HashDBApi(DEFAULT_SERVICE_URL);
+			File directory = new File(new File(fixtures, "hash"), ALGORITHM);
+			Files.createDirectories(directory.toPath());
+			for (int k = 0; k < size; k++) {
+				for (long hash : new long[] { callHash(k), arrayHash(k) }) {
+					ArrayList<HashDBApi.HashInfo> hashInfos = new ArrayList<HashDBApi.HashInfo>();
+					hashInfos.add(api.new ApiHashInfo(hash, String.format("Api%08X", hash), "api",
+							new String[] { "synthetic" }));
+					Files.write(new File(directory, String.format("%d.json", hash)).toPath(),
+							api.hashInfoToJson(hashInfos).toString().getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+
+		private void putInt(byte[] code, int offset, long value) {
+			for (int k = 0; k < 4; k++) {
+				code[offset + k] = (byte) (value >> (8 * k));
+			}
+		}
+
+		private Program createProgram(int calls, int arraySize) throws Exception {
+			Language language = DefaultLanguageService.getLanguageService()
+					.getLanguage(new LanguageID("x86:LE:32:default"));
+			CompilerSpec compilerSpec = language.getCompilerSpecByID(new CompilerSpecID("windows"));
+			ProgramDB program = new ProgramDB(String.format("synthetic-%d-%d", calls, arraySize), language,
+					compilerSpec, this);
+			int id = program.startTransaction("create synthetic program");
+			try {
+				AddressSpace space = program.getAddressFactory().getDefaultAddressSpace();
+				ArrayList<Long> entries = new ArrayList<Long>();
+				// deobfuscator: mov eax, [esp+4]; ret
+				byte[] code = new byte[16 + calls * 14 + (calls / CALLS_PER_FUNCTION + 1) * 5];
+				byte[] deobfuscator = { (byte) 0x8B, 0x44, 0x24, 0x04, (byte) 0xC3 };
+				Arrays.fill(code, (byte) 0xCC);
+				System.arraycopy(deobfuscator, 0, code, 0, deobfuscator.length);
+				entries.add(TEXT_BASE);
+				int offset = 16;
+				for (int k = 0; k < calls; k++) {
+					if (k % CALLS_PER_FUNCTION == 0) {
+						if (k > 0) {
+							code[offset++] = 0x5D; // pop ebp
+							code[offset++] = (byte) 0xC3; // ret
+						}
+						entries.add(TEXT_BASE + offset);
+						code[offset++] = 0x55; // push ebp
+						code[offset++] = (byte) 0x8B; // mov ebp, esp
+						code[offset++] = (byte) 0xEC;
+					}
+					if (k % 2 == 0) {
+						code[offset++] = 0x68; // push imm32
+						putInt(code, offset, callHash(k));
+						offset += 4;
+					} else {
+						code[offset++] = (byte) 0xB9; // mov ecx, imm32
+						putInt(code, offset, callHash(k));
+						offset += 4;
+						code[offset++] = 0x51; // push ecx
+					}
+					code[offset++] = (byte) 0xE8; // call rel32
+					putInt(code, offset, TEXT_BASE - (TEXT_BASE + offset + 4));
+					offset += 4;
+					code[offset++] = (byte) 0x83; // add esp, 4
+					code[offset++] = (byte) 0xC4;
+					code[offset++] = 0x04;
+				}
+				code[offset++] = 0x5D;
+				code[offset++] = (byte) 0xC3;
+
+				Address textStart = space.getAddress(TEXT_BASE);
+				program.getMemory().createInitializedBlock(".text", textStart, code.length, (byte) 0, monitor, false);
+				program.getMemory().setBytes(textStart, code);
+				new DisassembleCommand(new AddressSet(textStart, textStart.add(code.length - 1)), null, true)
+						.applyTo(program, monitor);
+				for (int k = 0; k < entries.size(); k++) {
+					String name = k == 0 ? "deobfuscate" : String.format("caller_%d", k);
+					new CreateFunctionCmd(name, space.getAddress(entries.get(k)), null, SourceType.USER_DEFINED)
+							.applyTo(program, monitor);
+				}
+
+				byte[] data = new byte[Math.max(4, arraySize * 4)];
+				for (int k = 0; k < arraySize; k++) {
+					putInt(data, 4 * k, arrayHash(k));
+				}
+				Address dataStart = space.getAddress(DATA_BASE);
+				program.getMemory().createInitializedBlock(".rdata", dataStart, data.length, (byte) 0, monitor, false);
+				program.getMemory().setBytes(dataStart, data);
+				program.getListing().createData(dataStart, new ArrayDataType(DWordDataType.dataType, arraySize, 4));
+			} finally {
+				program.endTransaction(id, true);
+			}
+			return program;
+		}
+
+		private long peakHeap() {
+			long ret = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+					ret += pool.getPeakUsage().getUsed();
+			}
+			return ret;
+		}
+
+		private JsonObject measure(int calls, int arraySize) throws Exception {
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				pool.resetPeakUsage();
+			}
+			long start = System.nanoTime();
+
+			metrics = new Metrics(String.format("scan-e2e-%d-%d", calls, arraySize));
+			Metrics scanMetrics = metrics;
+			Function deobfuscator = getFunctionAt(toAddr(TEXT_BASE));
+			List<Address> callAddresses = getCallAddresses(deobfuscator);
+			monitor.initialize(callAddresses.size());
+			LinkedHashMap<Long, Address> hashes = new LinkedHashMap<Long, Address>();
+			CallArgumentExtractor extractor = new CallArgumentExtractor(deobfuscator, 1, monitor);
+			try {
+				scanCallArguments(callAddresses, extractor, monitor,
+						(address, hash) -> hashes.putIfAbsent(hash, address));
+			} finally {
+				extractor.dispose();
+				scanMetrics.finish();
+			}
+			long scanned = System.nanoTime();
+
+			Address dataStart = toAddr(DATA_BASE);
+			getHashesInSelection(new AddressSet(dataStart, dataStart.add(Math.max(4, arraySize * 4) - 1)), hashes);
+			long imported = System.nanoTime();
+
+			ArrayList<HashLocation> rows = new ArrayList<HashLocation>();
+			for (Map.Entry<Long, Address> entry : hashes.entrySet()) {
+				rows.add(new HashLocation(entry.getValue(), entry.getKey()));
+			}
+			monitor.initialize(rows.size());
+			String status = resolveHashes(rows, monitor);
+			long end = System.nanoTime();
+
+			double seconds = (end - start) / 1e9;
+			JsonObject ret = new JsonObject();
+			ret.addProperty("calls", calls);
+			ret.addProperty("arraySize", arraySize);
+			ret.addProperty("hashes", rows.size());
+			ret.addProperty("hashesPerSecond", rows.size() / seconds);
+			ret.addProperty("totalMillis", (end - start) / 1e6);
+			ret.addProperty("scanMillis", (scanned - start) / 1e6);
+			ret.addProperty("importMillis", (imported - scanned) / 1e6);
+			ret.addProperty("resolveMillis", (end - imported) / 1e6);
+			ret.addProperty("peakHeapBytes", peakHeap());
+			ret.addProperty("decompilerProcesses", scanMetrics.getDecompilerProcesses());
+			ret.addProperty("decompiles", scanMetrics.getDecompiles());
+			ret.addProperty("status", status);
+			println(String.format("[HashDB] N=%-6d M=%-6d %7d hashes %10.1f hashes/s, peak heap %6.1f MiB, "
+					+ "%d decompiler processes, %d decompiles", calls, arraySize, rows.size(), rows.size() / seconds,
+					peakHeap() / (1024.0 * 1024.0), scanMetrics.getDecompilerProcesses(), scanMetrics.getDecompiles()));
+			return ret;
+		}
+	}
+
+	interface BenchmarkBody<T> {
+		long run(T state) throws Exception;
+	}
+
+	/*-
+	 * Ad-hoc smoke timings for the code paths that need neither a program nor the UI. Run them headless:
+	 *
+	 *   analyzeHeadless <dir> <project> -process <program> -postScript HashDB.java benchmark
+	 *       [filter=<substring>] [fixtures=<directory with recorded HashDB responses>]
+	 *
+	 * This is a hand-rolled timer, not a benchmark harness: every measurement runs in the same Ghidra
+	 * JVM after a short in-process warmup, without fork isolation or protection against JIT effects
+	 * beyond a result sink. Results are printed and written as a JSON report next to the metrics
+	 * reports; they are good enough to spot large regressions between versions of the script, but
+	 * small differences are noise. The JMH suite in src/jmh covers the same code paths properly.
+	 */
+	class Benchmark {
+		private static final int WARMUP_ITERATIONS = 3;
+		private static final int MEASUREMENT_ITERATIONS = 5;
+		private static final long ITERATION_NANOS = 500000000L;
+		private static final long BATCH_NANOS = 1000000L;
+
+		private final long startedAt = System.currentTimeMillis();
+		private String filter = null;
+		private File fixtures = null;
+		private final JsonObject results = new JsonObject();
+		private long sink = 0;
+
+		Benchmark(String[] args) {
+			for (int k = 1; k < args.length; k++) {
+				String[] option = args[k].split("=", 2);
+				if (option.length == 2 && option[0].equals("filter")) {
+					filter = option[1];
+				} else if (option.length == 2 && option[0].equals("fixtures")) {
+					fixtures = new File(option[1]);
+				} else {
+					throw new IllegalArgumentException(String.format("unknown benchmark option: %s", args[k]));
+				}
+			}
+		}
+
+		public void run() throws Exception {
+			benchmarkParseHash();
+			benchmarkParseHashInfoFromJson();
+			benchmarkApplyTransformation();
+			for (int size : new int[] { 1000, 10000, 100000 }) {
+				benchmarkResultStore(size);
+			}
+			benchmarkBulkHasher(100000);
+			JsonObject report = new JsonObject();
+			report.add("results", results);
+			report.addProperty("blackhole", sink);
+			File output = writeReport("benchmark", startedAt, report);
+			println(String.format("[HashDB] Wrote benchmark report to %s", output));
+		}
+
+		private void benchmarkParseHash() throws Exception {
+			String[] inputs = new String[1024];
+			for (int k = 0; k < inputs.length; k++) {
+				long value = (k * 0x9E3779B1L) & 0xFFFFFFFFL;
+				switch (k % 3) {
+				case 0:
+					inputs[k] = String.format("0x%x", value);
+					break;
+				case 1:
+					inputs[k] = String.format("%Xh", value);
+					break;
+				default:
+					inputs[k] = Long.toString(value);
+					break;
+				}
+			}
+			measure("parseHash", inputs.length, () -> inputs, false, state -> {
+				long ret = 0;
+				for (String input : state) {
+					ret += parseHash(input);
+				}
+				return ret;
+			});
+		}
+
+		private void benchmarkParseHashInfoFromJson() throws Exception {
+			HashDBApi api = new HashDBApi();
+			LinkedHashMap<String, String> responses = new LinkedHashMap<String, String>();
+			if (fixtures != null) {
+				List<java.nio.file.Path> files;
+				try (java.util.stream.Stream<java.nio.file.Path> walk = Files.walk(fixtures.toPath())) {
+					files = walk.filter(path -> path.toString().endsWith(".json")).sorted()
+							.collect(Collectors.toList());
+				}
+				for (java.nio.file.Path file : files) {
+					String response = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+					JsonElement parsed = JsonParser.parseString(response);
+					if (parsed.isJsonObject() && parsed.getAsJsonObject().has("hashes"))
+						responses.put(fixtures.toPath().relativize(file).toString(), response);
+				}
+			} else {
+				for (int size : new int[] { 100, 1000, 10000 }) {
+					ArrayList<HashDBApi.HashInfo> hashInfos = new ArrayList<HashDBApi.HashInfo>();
+					for (HashResolutionResult result : syntheticResults(api, size)) {
+						hashInfos.add(result.hashInfos.get(0));
+					}
+					responses.put(String.format("synthetic-%d", size), api.hashInfoToJson(hashInfos).toString());
+				}
+			}
+			for (Map.Entry<String, String> response : responses.entrySet()) {
+				measure(String.format("parseHashInfoFromJson/%s", response.getKey()), 1, response::getValue, false,
+						state -> api.parseHashInfoFromJson(state).size());
+			}
+		}
+
+		private void benchmarkApplyTransformation() throws Exception {
+			String[] names = { "identity", "xor", "revil" };
+			for (int k = 0; k < STOCK_TRANSFORMATIONS.length; k++) {
+				String transformation = STOCK_TRANSFORMATIONS[k];
+				measure(String.format("applyTransformation/%s", names[k]), 1, () -> new long[1], false, state -> {
+					state[0] = (state[0] + 0x9E3779B1L) & 0xFFFFFFFFL;
+					return applyTransformation(state[0], transformation);
+				});
+			}
+		}
+
+		private ArrayList<HashResolutionResult> syntheticResults(HashDBApi api, int size) {
+			ArrayList<HashResolutionResult> ret = new ArrayList<HashResolutionResult>();
+			String[] modules = { "kernel32", "ntdll", "advapi32", "ws2_32" };
+			for (int k = 0; k < size; k++) {
+				long hash = (k * 0x9E3779B1L) & 0xFFFFFFFFL;
+				String apiName = String.format("Function%d", k);
+				String[] apiModules = { modules[k % modules.length] };
+				ArrayList<HashDBApi.HashInfo> hashInfos = new ArrayList<HashDBApi.HashInfo>();
+				hashInfos.add(api.new ApiHashInfo(hash, apiName, "api", apiModules));
+				hashInfos.add(api.new ApiHashInfo(hash, apiName.toLowerCase(), "api_lower", apiModules));
+				ret.add(new HashResolutionResult(hash, hashInfos));
+			}
+			return ret;
+		}
+
+		private HashResolutionResultStore fillStore(ArrayList<HashResolutionResult> results) {
+			HashResolutionResultStore store = new HashResolutionResultStore("benchmark");
+			for (HashResolutionResult result : results) {
+				store.addCollision(result.hashBeforeTransformation, result.hashBeforeTransformation,
+						new ArrayList<HashDBApi.HashInfo>(result.hashInfos));
+			}
+			return store;
+		}
+
+		private void benchmarkResultStore(int size) throws Exception {
+			ArrayList<HashResolutionResult> results = syntheticResults(new HashDBApi(), size);
+			measure(String.format("resultStore.insert/%d", size), size, () -> results, false,
+					state -> fillStore(state).store.size());
+			measure(String.format("resultStore.prunePermutations/%d", size), size, () -> fillStore(results), true,
+					state -> state.prunePermutations().length());
+			HashResolutionResultStore pruned = fillStore(results);
+			pruned.prunePermutations();
+			measure(String.format("resultStore.resolvedResults/%d", size), size, () -> pruned, false,
+					state -> state.resolvedResults().size());
+		}
+
+		private void benchmarkBulkHasher(int size) throws Exception {
+			ArrayList<String> names = new ArrayList<String>();
+			String[] prefixes = { "Nt", "Rtl", "Create", "Get", "Set", "Reg", "Internet", "Crypt" };
+			for (int k = 0; k < size; k++) {
+				names.add(String.format("%sFunction%dEx%s", prefixes[k % prefixes.length], k, k % 2 == 0 ? "W" : "A"));
+			}
+			BulkHasher.Dictionary dictionary = BulkHasher.Dictionary.of(names);
+			for (String algorithm : BulkHasher.ALGORITHMS) {
+				measure(String.format("bulkHasher/%s/%d", algorithm, size), size, () -> dictionary, false,
+						state -> BulkHasher.hash(state, algorithm).hashes[0]);
+			}
+		}
+
+		/**
+		 * Runs the body repeatedly for a fixed time per iteration and reports the mean time per
+		 * operation over all measurement iterations.
+		 *
+		 * @param operations         the number of operations performed by one invocation of the body.
+		 * @param setupPerInvocation whether the state must be recreated before every invocation,
+		 *                           e.g. because the body modifies it. Setup time is not measured.
+		 */
+		private <T> void measure(String name, int operations, Callable<T> setup, boolean setupPerInvocation,
+				BenchmarkBody<T> body) throws Exception {
+			if (filter != null && !name.contains(filter))
+				return;
+			monitor.checkCanceled();
+			monitor.setMessage(String.format("benchmarking %s", name));
+			T state = setup.call();
+			double[] scores = new double[MEASUREMENT_ITERATIONS];
+			int batch = 1;
+			for (int k = 0; k < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; k++) {
+				long invocations = 0;
+				long elapsed = 0;
+				long deadline = System.nanoTime() + ITERATION_NANOS;
+				while (System.nanoTime() < deadline) {
+					if (setupPerInvocation)
+						state = setup.call();
+					long start = System.nanoTime();
+					for (int j = 0; j < batch; j++) {
+						sink ^= body.run(state);
+					}
+					long batchNanos = System.nanoTime() - start;
+					elapsed += batchNanos;
+					invocations += batch;
+					if (!setupPerInvocation && batchNanos < BATCH_NANOS)
+						batch *= 2;
+				}
+				if (k >= WARMUP_ITERATIONS)
+					scores[k - WARMUP_ITERATIONS] = (double) elapsed / (invocations * operations);
+			}
+			double mean = Arrays.stream(scores).average().orElse(0);
+			double variance = Arrays.stream(scores).map(score -> (score - mean) * (score - mean)).sum()
+					/ Math.max(1, scores.length - 1);
+			double error = Math.sqrt(variance);
+			println(String.format("[HashDB] %-45s %14.1f +- %10.1f ns/op", name, mean, error));
+			JsonObject result = new JsonObject();
+			result.addProperty("nsPerOp", mean);
+			result.addProperty("error", error);
+			result.addProperty("operationsPerInvocation", operations);
+			results.add(name, result);
+		}
+	}
+
+	/*-
+	 * Entry points for the JMH suite in src/jmh (see build.gradle). The suite is compiled outside the
+	 * script and cannot reach its private members, so it goes through this class, which uses the
+	 * same synthetic data as the "benchmark" command.
+	 */
+	static class BenchmarkTargets {
+		private final HashDB script = new HashDB();
+		private final HashDBApi api = script.new HashDBApi();
+		private final Benchmark data = script.new Benchmark(new String[0]);
+		private ArrayList<HashResolutionResult> results = null;
+		private HashResolutionResultStore store = null;
+
+		long parseHash(String input) throws Exception {
+			return script.parseHash(input);
+		}
+
+		long applyTransformation(long hash, String transformation) throws Exception {
+			return script.applyTransformation(hash, transformation);
+		}
+
+		/**
+		 * @return a HashDB response with one API name in two permutations for each of size hashes.
+		 */
+		String syntheticResponse(int size) {
+			ArrayList<HashDBApi.HashInfo> hashInfos = new ArrayList<HashDBApi.HashInfo>();
+			for (HashResolutionResult result : data.syntheticResults(api, size)) {
+				hashInfos.add(result.hashInfos.get(0));
+			}
+			return api.hashInfoToJson(hashInfos).toString();
+		}
+
+		int parseHashInfoFromJson(String response) {
+			return api.parseHashInfoFromJson(response).size();
+		}
+
+		void prepareResults(int size) {
+			results = data.syntheticResults(api, size);
+		}
+
+		/**
+		 * Fills a new result store with the prepared results; it is kept for the other methods.
+		 */
+		int fillResultStore() {
+			store = data.fillStore(results);
+			return store.store.size();
+		}
+
+		int prunePermutations() throws Exception {
+			return store.prunePermutations().length();
+		}
+
+		int resolvedResults() {
+			return store.resolvedResults().size();
+		}
+	}
+
 	private void configureTableColumns(TableChooserDialog dialogToConfigure) {
 		StringColumnDisplay hashColumn = new StringColumnDisplay() {
 			@Override
@@ -1570,19 +6577,260 @@ public class HashDB extends GhidraScript {
 				return "Resolution";
 			}
 
-			@Override
-			public String getColumnValue(AddressableRowObject rowObject) {
-				HashLocation row = (HashLocation) rowObject;
-				return row.getResolution() == null ? "-" : row.getResolution();
+			@Override
+			public String getColumnValue(AddressableRowObject rowObject) {
+				HashLocation row = (HashLocation) rowObject;
+				return row.getResolution() == null ? "-" : row.getResolution();
+			}
+
+			@Override
+			public int compare(AddressableRowObject o1, AddressableRowObject o2) {
+				return getColumnValue(o1).compareTo(getColumnValue(o2));
+			}
+		};
+
+		dialogToConfigure.addCustomColumn(resolutionColumn);
+	}
+
+	/*-
+	 * Parses hash lists for bulk import into the table, straight from a memory-mapped file or the
+	 * clipboard contents into primitive arrays. Text lists hold hashes separated by whitespace,
+	 * commas or semicolons, written like in the "Hash" field: hex with a 0x prefix or an h suffix,
+	 * decimal otherwise (tokens with the digits a-f are read as hex, too). CSV lines hold a hash, an
+	 * optional address (hex) and an optional label; a first line that does not start with a hash is
+	 * taken as the header. Binary files are arrays of dwords or qwords, in which zeros are skipped.
+	 */
+	static class HashListReader {
+		static final long NO_ADDRESS = -1L;
+
+		enum Format {
+			Text("Hash List"), Csv("CSV (hash, address, label)"), DwordLittleEndian("DWORDs, little endian"),
+			DwordBigEndian("DWORDs, big endian"), QwordLittleEndian("QWORDs, little endian"),
+			QwordBigEndian("QWORDs, big endian");
+
+			final String label;
+
+			Format(String label) {
+				this.label = label;
+			}
+
+			boolean isBinary() {
+				return this != Text && this != Csv;
+			}
+
+			@Override
+			public String toString() {
+				return label;
+			}
+		}
+
+		long[] hashes = new long[1024];
+		long[] addresses = new long[1024];
+		String[] labels = null;
+		int size = 0;
+		int invalid = 0;
+
+		private final ByteBuffer buffer;
+		private boolean parsed;
+
+		private HashListReader(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		static HashListReader read(File file, Format format) throws IOException {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				if (channel.size() > Integer.MAX_VALUE) {
+					throw new IOException(String.format("%s is larger than 2GB", file));
+				}
+				return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), format);
+			}
+		}
+
+		static HashListReader read(ByteBuffer buffer, Format format) {
+			HashListReader reader = new HashListReader(buffer);
+			switch (format) {
+			case Text:
+				reader.readText();
+				break;
+			case Csv:
+				reader.labels = new String[reader.hashes.length];
+				reader.readCsv();
+				break;
+			case DwordLittleEndian:
+			case DwordBigEndian:
+				reader.readBinary(4, format == Format.DwordLittleEndian);
+				break;
+			case QwordLittleEndian:
+			case QwordBigEndian:
+				reader.readBinary(8, format == Format.QwordLittleEndian);
+				break;
+			}
+			return reader;
+		}
+
+		private void add(long hash, long address, String label) {
+			if (size == hashes.length) {
+				hashes = Arrays.copyOf(hashes, size * 2);
+				addresses = Arrays.copyOf(addresses, size * 2);
+				if (labels != null)
+					labels = Arrays.copyOf(labels, size * 2);
+			}
+			hashes[size] = hash;
+			addresses[size] = address;
+			if (labels != null)
+				labels[size] = label;
+			size++;
+		}
+
+		private static boolean isSeparator(byte c) {
+			return c <= ' ' || c == ',' || c == ';';
+		}
+
+		private void readText() {
+			int limit = buffer.limit();
+			int position = 0;
+			while (position < limit) {
+				if (isSeparator(buffer.get(position))) {
+					position++;
+					continue;
+				}
+				int end = position;
+				while (end < limit && !isSeparator(buffer.get(end)))
+					end++;
+				long hash = parseNumber(position, end, false);
+				if (parsed) {
+					add(hash, NO_ADDRESS, null);
+				} else {
+					invalid++;
+				}
+				position = end;
+			}
+		}
+
+		private void readCsv() {
+			int limit = buffer.limit();
+			int position = 0;
+			boolean firstLine = true;
+			int[] field = new int[2];
+			while (position < limit) {
+				int end = position;
+				while (end < limit && buffer.get(end) != '\n')
+					end++;
+				int next = end + 1;
+				if (nextField(position, end, field)) {
+					long hash = parseNumber(field[0], field[1], false);
+					if (parsed) {
+						long address = NO_ADDRESS;
+						String label = null;
+						int fieldEnd = field[1];
+						if (fieldEnd < end && nextField(fieldEnd + 1, end, field)) {
+							long value = parseNumber(field[0], field[1], true);
+							if (parsed)
+								address = value;
+							fieldEnd = field[1];
+							if (fieldEnd < end && nextField(fieldEnd + 1, end, field))
+								label = decode(field[0], field[1]);
+						}
+						add(hash, address, label);
+					} else if (!firstLine) {
+						invalid++;
+					}
+					firstLine = false;
+				}
+				position = next;
 			}
+		}
 
-			@Override
-			public int compare(AddressableRowObject o1, AddressableRowObject o2) {
-				return getColumnValue(o1).compareTo(getColumnValue(o2));
+		/**
+		 * Finds the comma-separated field that starts at start and stores where its value begins
+		 * (after blanks and an opening quote) and where the field ends (at the comma or the end of
+		 * the line) in field.
+		 *
+		 * @return false if nothing but blanks is left on the line.
+		 */
+		private boolean nextField(int start, int end, int[] field) {
+			int stop = start;
+			while (stop < end && buffer.get(stop) != ',')
+				stop++;
+			int first = start;
+			while (first < stop && buffer.get(first) <= ' ')
+				first++;
+			if (first < stop && buffer.get(first) == '"')
+				first++;
+			field[0] = first;
+			field[1] = stop;
+			return first < stop || stop < end;
+		}
+
+		private String decode(int start, int end) {
+			while (end > start && (buffer.get(end - 1) <= ' ' || buffer.get(end - 1) == '"'))
+				end--;
+			if (end == start)
+				return null;
+			byte[] bytes = new byte[end - start];
+			buffer.get(start, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Parses the number between start and end (up to the first blank or quote); sets parsed to
+		 * whether it is one.
+		 */
+		private long parseNumber(int start, int end, boolean hexByDefault) {
+			parsed = false;
+			int stop = start;
+			while (stop < end && buffer.get(stop) > ' ' && buffer.get(stop) != '"')
+				stop++;
+			end = stop;
+			boolean hex = hexByDefault;
+			if (end - start > 2 && buffer.get(start) == '0' && (buffer.get(start + 1) | 0x20) == 'x') {
+				start += 2;
+				hex = true;
+			} else if (end - start > 1 && (buffer.get(end - 1) | 0x20) == 'h') {
+				end--;
+				hex = true;
 			}
-		};
+			if (end == start)
+				return 0;
+			long value = 0;
+			if (!hex) {
+				for (int k = start; k < end; k++) {
+					int c = buffer.get(k);
+					if (c < '0' || c > '9') {
+						hex = true;
+						break;
+					}
+					if (value > (Long.MAX_VALUE - (c - '0')) / 10)
+						return 0;
+					value = value * 10 + (c - '0');
+				}
+			}
+			if (hex) {
+				if (end - start > 16)
+					return 0;
+				value = 0;
+				for (int k = start; k < end; k++) {
+					int digit = Character.digit(buffer.get(k), 16);
+					if (digit < 0)
+						return 0;
+					value = value << 4 | digit;
+				}
+			}
+			parsed = true;
+			return value;
+		}
 
-		dialogToConfigure.addCustomColumn(resolutionColumn);
+		private void readBinary(int width, boolean littleEndian) {
+			ByteBuffer values = buffer.duplicate().order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			int count = values.limit() / width;
+			for (int k = 0; k < count; k++) {
+				long hash = width == 4 ? values.getInt(k * 4) & 0xFFFFFFFFL : values.getLong(k * 8);
+				if (hash != 0)
+					add(hash, NO_ADDRESS, null);
+			}
+			if (values.limit() % width != 0)
+				invalid++;
+		}
 	}
 
 	class HashLocation implements AddressableRowObject {
@@ -1614,6 +6862,21 @@ public class HashDB extends GhidraScript {
 		}
 	}
 
+	private void getHashesInSelection(AddressSetView selection, HashMap<Long, Address> hashes) {
+		long nextCheckpoint = selection.getMinAddress().getOffset();
+		for (AddressRange addressRange : selection.getAddressRanges(true)) {
+			for (Address address : addressRange) {
+				if (address.getOffset() < nextCheckpoint)
+					continue;
+				try {
+					nextCheckpoint = getHashesAt(address, hashes).getOffset();
+				} catch (Exception e) {
+					logDebugMessage(String.format("Error parsing data at 0x%08X:", address.getOffset()), e);
+				}
+			}
+		}
+	}
+
 	private Address getHashesAt(Address address, HashMap<Long, Address> hashes) throws NotFoundException {
 		Data data = currentProgram.getListing().getDataAt(address);
 		if (data != null) {
@@ -1686,51 +6949,826 @@ public class HashDB extends GhidraScript {
 		}
 	}
 
-	private OptionalLong getConstantCallArgument(Address addr, int argumentIndex)
-			throws IllegalStateException, UnknownVariableCopy {
-		Function caller = getFunctionBefore(addr);
-		if (caller == null)
-			throw new IllegalStateException();
-		DecompInterface decompInterface = new DecompInterface();
-		decompInterface.openProgram(currentProgram);
-		DecompileResults decompileResults = decompInterface.decompileFunction(caller, 120, monitor);
-		if (!decompileResults.decompileCompleted())
-			throw new IllegalStateException();
-		HighFunction highFunction = decompileResults.getHighFunction();
-		Iterator<PcodeOpAST> pCodes = highFunction.getPcodeOps(addr);
-		while (pCodes.hasNext()) {
-			PcodeOpAST instruction = pCodes.next();
-			if (instruction.getOpcode() == PcodeOp.CALL) {
-				return traceVarnodeValue(instruction.getInput(argumentIndex));
+	/*-
+	 * Extracts constant arguments of calls to a given function. The cheap tier walks the raw p-code of
+	 * the instructions that fall through to the call and only follows constants, copies and stack
+	 * pointer arithmetic; this covers the common "push imm32" and "mov reg, imm" patterns. Only when
+	 * that fails, the caller is decompiled. Decompiled functions are cached because call sites of
+	 * the same caller are usually adjacent, and the decompiler timeout adapts to the observed
+	 * decompilation times.
+	 */
+	class CallArgumentExtractor {
+		private static final int MAX_BACKTRACK_INSTRUCTIONS = 32;
+		private static final int MIN_DECOMPILER_TIMEOUT = 10;
+		private static final int MAX_DECOMPILER_TIMEOUT = 120;
+		private static final int CACHED_FUNCTIONS = 16;
+		private static final int MAX_EMULATION_STEPS = 4096;
+		private static final long EMULATION_STACK_BASE = 0x7FF00000L;
+
+		private final Function callee;
+		private final int argumentIndex;
+		private final TaskMonitor taskMonitor;
+		private final Register stackPointer;
+		private volatile DecompInterface decompInterface = null;
+		private final CancelledListener stopDecompiler = () -> {
+			DecompInterface running = decompInterface;
+			if (running != null)
+				running.stopProcess();
+		};
+		private final LinkedHashMap<Function, VarnodeEvaluator> decompiled;
+		private final ArrayList<EmulationContext> emulationContexts = new ArrayList<EmulationContext>();
+		private final ThreadLocal<EmulationContext> emulationContext = ThreadLocal.withInitial(() -> {
+			EmulationContext context = new EmulationContext();
+			synchronized (emulationContexts) {
+				emulationContexts.add(context);
+			}
+			return context;
+		});
+		private final ConcurrentHashMap<Address, ConcurrentHashMap<Address, OptionalLong>> emulationCache = new ConcurrentHashMap<>();
+		private int fastPathCount = 0;
+		private int decompileCount = 0;
+		private double slowestDecompile = 0;
+
+		CallArgumentExtractor(Function callee, int argumentIndex, TaskMonitor taskMonitor) {
+			this.callee = callee;
+			this.argumentIndex = argumentIndex;
+			this.taskMonitor = taskMonitor;
+			this.stackPointer = currentProgram.getCompilerSpec().getStackPointer();
+			this.decompiled = new LinkedHashMap<Function, VarnodeEvaluator>(CACHED_FUNCTIONS, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Function, VarnodeEvaluator> eldest) {
+					return size() > CACHED_FUNCTIONS;
+				}
+			};
+			if (taskMonitor != null)
+				taskMonitor.addCancelledListener(stopDecompiler);
+		}
+
+		public int getFastPathCount() {
+			return fastPathCount;
+		}
+
+		public void dispose() {
+			if (taskMonitor != null)
+				taskMonitor.removeCancelledListener(stopDecompiler);
+			if (decompInterface != null) {
+				decompInterface.dispose();
+				decompInterface = null;
+			}
+			decompiled.clear();
+			synchronized (emulationContexts) {
+				for (EmulationContext context : emulationContexts) {
+					context.emulator.dispose();
+				}
+				emulationContexts.clear();
+			}
+		}
+
+		/**
+		 * @return all constants that may be passed at this call site; empty if none could be determined.
+		 */
+		public long[] extract(Address callAddr) throws IllegalStateException, UnknownVariableCopy {
+			OptionalLong value = extractWithoutDecompiler(callAddr);
+			if (value.isPresent()) {
+				fastPathCount++;
+				return new long[] { value.getAsLong() };
+			}
+			return extractWithDecompiler(callAddr);
+		}
+
+		private VariableStorage getArgumentStorage() {
+			Parameter parameter = callee.getParameter(argumentIndex - 1);
+			if (parameter != null && parameter.getVariableStorage().isValid())
+				return parameter.getVariableStorage();
+			PrototypeModel model = callee.getCallingConvention();
+			if (model == null)
+				model = currentProgram.getCompilerSpec().getDefaultCallingConvention();
+			return model.getArgLocation(argumentIndex - 1, null, PointerDataType.dataType, currentProgram);
+		}
+
+		private int getStackShift() {
+			PrototypeModel model = callee.getCallingConvention();
+			if (model == null)
+				model = currentProgram.getCompilerSpec().getDefaultCallingConvention();
+			return model.getStackshift();
+		}
+
+		private boolean isBlockStart(Instruction instruction) {
+			for (Reference ref : getReferencesTo(instruction.getAddress())) {
+				if (ref.getReferenceType().isFlow())
+					return true;
+			}
+			return false;
+		}
+
+		private OptionalLong extractWithoutDecompiler(Address callAddr) {
+			VariableStorage storage = getArgumentStorage();
+			Varnode register = null;
+			long stackTarget = 0;
+			if (storage != null && storage.isRegisterStorage()) {
+				register = new Varnode(storage.getRegister().getAddress(), storage.getRegister().getMinimumByteSize());
+			} else if (storage != null && storage.isStackStorage()) {
+				stackTarget = storage.getStackOffset() - getStackShift();
+			} else {
+				return OptionalLong.empty();
+			}
+
+			Instruction instruction = currentProgram.getListing().getInstructionAt(callAddr);
+			long depth = 0;
+			for (int k = 0; instruction != null && k < MAX_BACKTRACK_INSTRUCTIONS; k++) {
+				if (isBlockStart(instruction) || instruction.getFallFrom() == null)
+					break;
+				instruction = currentProgram.getListing().getInstructionAt(instruction.getFallFrom());
+				if (instruction == null || instruction.getFlowType().isFlow())
+					break;
+				InstructionEffect effect = new InstructionEffect(instruction);
+				if (register != null) {
+					SymbolicValue written = effect.getWritten(register);
+					if (written == null)
+						continue;
+					if (written.isConstant())
+						return OptionalLong.of(written.value);
+					if (written.register == null)
+						break;
+					register = written.register;
+				} else {
+					if (effect.stackDelta == null)
+						break;
+					SymbolicValue stored = effect.getStored(stackTarget - depth + effect.stackDelta);
+					depth -= effect.stackDelta;
+					if (stored == null)
+						continue;
+					if (stored.isConstant())
+						return OptionalLong.of(stored.value);
+					if (stored.register == null)
+						break;
+					register = stored.register;
+				}
+			}
+			return OptionalLong.empty();
+		}
+
+		private class SymbolicValue {
+			final boolean known;
+			final Long stackOffset;
+			final Varnode register;
+			final long value;
+
+			SymbolicValue(boolean known, Long stackOffset, Varnode register, long value) {
+				this.known = known;
+				this.stackOffset = stackOffset;
+				this.register = register;
+				this.value = value;
+			}
+
+			boolean isConstant() {
+				return known && stackOffset == null && register == null;
+			}
+		}
+
+		private SymbolicValue constant(long value) {
+			return new SymbolicValue(true, null, null, value);
+		}
+
+		private final SymbolicValue unknown = new SymbolicValue(false, null, null, 0);
+
+		/*-
+		 * Symbolically executes the p-code of a single instruction. Values are constants, offsets
+		 * relative to the stack pointer at the start of the instruction, or the initial value of a
+		 * register; everything else is unknown.
+		 */
+		private class InstructionEffect {
+			private final HashMap<Varnode, SymbolicValue> values = new HashMap<Varnode, SymbolicValue>();
+			private final HashMap<Long, SymbolicValue> stores = new HashMap<Long, SymbolicValue>();
+			private final Varnode stackPointerVarnode;
+			final Long stackDelta;
+
+			InstructionEffect(Instruction instruction) {
+				stackPointerVarnode = new Varnode(stackPointer.getAddress(), stackPointer.getMinimumByteSize());
+				values.put(stackPointerVarnode, new SymbolicValue(true, 0L, null, 0));
+				for (PcodeOp op : instruction.getPcode()) {
+					evaluate(op);
+				}
+				stackDelta = values.get(stackPointerVarnode).stackOffset;
+			}
+
+			private SymbolicValue read(Varnode varnode) {
+				if (varnode.isConstant())
+					return constant(varnode.getOffset());
+				if (values.containsKey(varnode))
+					return values.get(varnode);
+				if (varnode.isRegister()) {
+					for (Varnode written : values.keySet()) {
+						if (overlaps(written, varnode))
+							return unknown;
+					}
+					return new SymbolicValue(true, null, varnode, 0);
+				}
+				return unknown;
+			}
+
+			private boolean overlaps(Varnode a, Varnode b) {
+				if (a.getSpace() != b.getSpace())
+					return false;
+				return a.getOffset() < b.getOffset() + b.getSize() && b.getOffset() < a.getOffset() + a.getSize();
+			}
+
+			private long mask(long value, int size) {
+				return size >= 8 ? value : value & ((1L << (8 * size)) - 1);
+			}
+
+			private void evaluate(PcodeOp op) {
+				Varnode output = op.getOutput();
+				if (op.getOpcode() == PcodeOp.STORE) {
+					SymbolicValue target = read(op.getInput(1));
+					if (target.known && target.stackOffset != null)
+						stores.put(target.stackOffset, read(op.getInput(2)));
+					return;
+				}
+				if (output == null)
+					return;
+				SymbolicValue a = op.getNumInputs() > 0 ? read(op.getInput(0)) : unknown;
+				SymbolicValue b = op.getNumInputs() > 1 ? read(op.getInput(1)) : unknown;
+				SymbolicValue result = unknown;
+				switch (op.getOpcode()) {
+				case PcodeOp.COPY:
+					result = a;
+					break;
+				case PcodeOp.INT_ZEXT:
+					if (a.isConstant())
+						result = a;
+					break;
+				case PcodeOp.INT_ADD:
+				case PcodeOp.INT_SUB:
+					if (a.known && a.register == null && b.isConstant()) {
+						long delta = op.getOpcode() == PcodeOp.INT_ADD ? b.value : -b.value;
+						if (a.stackOffset != null)
+							result = new SymbolicValue(true, a.stackOffset + delta, null, 0);
+						else
+							result = constant(a.value + delta);
+					}
+					break;
+				case PcodeOp.INT_XOR:
+					if (op.getInput(0).equals(op.getInput(1)))
+						result = constant(0);
+					else if (a.isConstant() && b.isConstant())
+						result = constant(a.value ^ b.value);
+					break;
+				default:
+					break;
+				}
+				if (result.isConstant())
+					result = constant(mask(result.value, output.getSize()));
+				values.put(output, result);
+			}
+
+			/**
+			 * Uses the widest written varnode that covers the register, since an instruction can write
+			 * both a register and its parent (e.g. ECX and RCX on x64).
+			 *
+			 * @return null if the register is not written by this instruction.
+			 */
+			SymbolicValue getWritten(Varnode register) {
+				boolean touched = false;
+				Varnode widest = null;
+				for (Varnode written : values.keySet()) {
+					if (written.equals(stackPointerVarnode) || !overlaps(written, register))
+						continue;
+					touched = true;
+					if (written.getOffset() == register.getOffset() && written.getSize() >= register.getSize()
+							&& (widest == null || written.getSize() > widest.getSize()))
+						widest = written;
+				}
+				if (!touched)
+					return null;
+				if (widest == null)
+					return unknown;
+				SymbolicValue value = values.get(widest);
+				if (value.isConstant())
+					return constant(mask(value.value, register.getSize()));
+				return value;
+			}
+
+			/**
+			 * @return null if the stack slot is not written by this instruction.
+			 */
+			SymbolicValue getStored(long stackOffset) {
+				return stores.get(stackOffset);
+			}
+		}
+
+		/*-
+		 * Emulation tier: the straight-line slice of the basic block that ends in the call (starting
+		 * after the last preceding call) is emulated twice with different garbage in all registers
+		 * and uninitialized memory. If the argument has the same value in both runs, it does not
+		 * depend on anything outside the slice. Call sites are grouped by caller; the groups run in
+		 * parallel, each thread with its own emulator, and the results are cached per caller. An
+		 * emulator is reused for many runs, so everything the previous run wrote (the stack included)
+		 * is overwritten with the new garbage before the next run starts.
+		 */
+		private class EmulationContext implements MemoryFaultHandler {
+			final EmulatorHelper emulator;
+			byte fill = 0;
+			boolean touchedUnknownAddress = false;
+
+			EmulationContext() {
+				emulator = new EmulatorHelper(currentProgram);
+				emulator.setMemoryFaultHandler(this);
+				emulator.enableMemoryWriteTracking(true);
+			}
+
+			void reset(byte fill) {
+				AddressSetView written = emulator.getTrackedMemoryWriteSet();
+				emulator.enableMemoryWriteTracking(false);
+				for (AddressRange range : written) {
+					byte[] garbage = new byte[(int) range.getLength()];
+					Arrays.fill(garbage, fill);
+					emulator.writeMemory(range.getMinAddress(), garbage);
+				}
+				emulator.enableMemoryWriteTracking(true);
+				this.fill = fill;
+				touchedUnknownAddress = false;
+			}
+
+			@Override
+			public boolean uninitializedRead(Address address, int size, byte[] buf, int bufOffset) {
+				Arrays.fill(buf, bufOffset, bufOffset + size, fill);
+				return true;
+			}
+
+			@Override
+			public boolean unknownAddress(Address address, boolean write) {
+				if (!write)
+					touchedUnknownAddress = true;
+				return true;
+			}
+		}
+
+		public Map<Address, OptionalLong> emulate(List<Address> callAddresses) throws CancelledException {
+			LinkedHashMap<Address, List<Address>> byCaller = new LinkedHashMap<Address, List<Address>>();
+			for (Address callAddr : callAddresses) {
+				Function caller = getFunctionContaining(callAddr);
+				Address key = caller == null ? callAddr : caller.getEntryPoint();
+				byCaller.computeIfAbsent(key, k -> new ArrayList<Address>()).add(callAddr);
 			}
+			ConcurrentHashMap<Address, OptionalLong> results = new ConcurrentHashMap<Address, OptionalLong>();
+			ExecutorService executor = Executors.newFixedThreadPool(
+					Math.max(1, Math.min(byCaller.size(), Runtime.getRuntime().availableProcessors())));
+			try {
+				ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+				for (Map.Entry<Address, List<Address>> entry : byCaller.entrySet()) {
+					futures.add(executor.submit(() -> {
+						Map<Address, OptionalLong> cache = emulationCache.computeIfAbsent(entry.getKey(),
+								k -> new ConcurrentHashMap<Address, OptionalLong>());
+						for (Address callAddr : entry.getValue()) {
+							if (taskMonitor.isCancelled())
+								return;
+							results.put(callAddr, cache.computeIfAbsent(callAddr, this::emulateCallSite));
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (InterruptedException | ExecutionException e) {
+						logDebugMessage("Error during emulation:", e);
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			taskMonitor.checkCanceled();
+			return results;
+		}
+
+		private Address getSliceStart(Address callAddr) throws CancelledException {
+			CodeBlock block = new BasicBlockModel(currentProgram).getFirstCodeBlockContaining(callAddr, taskMonitor);
+			if (block == null)
+				return null;
+			Address blockStart = block.getFirstStartAddress();
+			Address sliceStart = callAddr;
+			Instruction instruction = currentProgram.getListing().getInstructionAt(callAddr);
+			while (!sliceStart.equals(blockStart)) {
+				Address previous = instruction.getFallFrom();
+				if (previous == null || previous.compareTo(blockStart) < 0)
+					break;
+				instruction = currentProgram.getListing().getInstructionAt(previous);
+				if (instruction == null || instruction.getFlowType().isCall())
+					break;
+				sliceStart = previous;
+			}
+			return sliceStart;
+		}
+
+		private OptionalLong emulateCallSite(Address callAddr) {
+			try {
+				Address start = getSliceStart(callAddr);
+				if (start == null || start.equals(callAddr))
+					return OptionalLong.empty();
+				EmulationContext context = emulationContext.get();
+				OptionalLong first = emulateSlice(context, start, callAddr, (byte) 0x5A);
+				if (first.isEmpty())
+					return first;
+				OptionalLong second = emulateSlice(context, start, callAddr, (byte) 0xA5);
+				if (second.isEmpty() || second.getAsLong() != first.getAsLong())
+					return OptionalLong.empty();
+				return first;
+			} catch (Exception e) {
+				if (isGuiDebugging()) {
+					logDebugMessage(String.format("Emulation failed for call at 0x%x", callAddr.getOffset()), e);
+				}
+				return OptionalLong.empty();
+			}
+		}
+
+		private BigInteger fillValue(byte fill, int bitLength) {
+			long value = (fill & 0xFFL) * 0x0101010101010101L;
+			if (bitLength < 64)
+				value &= (1L << bitLength) - 1;
+			return new BigInteger(Long.toUnsignedString(value));
+		}
+
+		private OptionalLong emulateSlice(EmulationContext context, Address start, Address callAddr, byte fill)
+				throws CancelledException {
+			EmulatorHelper emulator = context.emulator;
+			context.reset(fill);
+			for (Register register : currentProgram.getLanguage().getRegisters()) {
+				if (!register.isBaseRegister() || register.isProcessorContext() || register.isProgramCounter()
+						|| register.getBitLength() > 64)
+					continue;
+				emulator.writeRegister(register, fillValue(fill, register.getBitLength()));
+			}
+			emulator.writeRegister(emulator.getStackPointerRegister(), BigInteger.valueOf(EMULATION_STACK_BASE));
+			emulator.writeRegister(emulator.getPCRegister(), BigInteger.valueOf(start.getOffset()));
+			for (int steps = 0; !callAddr.equals(emulator.getExecutionAddress()); steps++) {
+				if (steps >= MAX_EMULATION_STEPS || !emulator.step(taskMonitor))
+					return OptionalLong.empty();
+			}
+			if (context.touchedUnknownAddress)
+				return OptionalLong.empty();
+
+			VariableStorage storage = getArgumentStorage();
+			if (storage.isRegisterStorage()) {
+				return OptionalLong.of(emulator.readRegister(storage.getRegister()).longValue());
+			}
+			if (!storage.isStackStorage())
+				return OptionalLong.empty();
+			// stack offsets are relative to the stack pointer at the call, after pushed arguments
+			long stackPointerAtCall = emulator.readRegister(emulator.getStackPointerRegister()).longValue();
+			Address slot = callAddr.getAddressSpace()
+					.getAddress(stackPointerAtCall + storage.getStackOffset() - getStackShift());
+			byte[] bytes = emulator.readMemory(slot, storage.size());
+			if (context.touchedUnknownAddress)
+				return OptionalLong.empty();
+			long value = 0;
+			boolean bigEndian = currentProgram.getLanguage().isBigEndian();
+			for (int k = 0; k < bytes.length; k++) {
+				int index = bigEndian ? k : bytes.length - 1 - k;
+				value = (value << 8) | (bytes[index] & 0xFFL);
+			}
+			return OptionalLong.of(value);
+		}
+
+		private int getDecompilerTimeout() {
+			if (decompileCount < 5)
+				return MAX_DECOMPILER_TIMEOUT;
+			int timeout = (int) Math.ceil(4 * slowestDecompile);
+			return Math.max(MIN_DECOMPILER_TIMEOUT, Math.min(MAX_DECOMPILER_TIMEOUT, timeout));
+		}
+
+		private VarnodeEvaluator decompile(Function caller) throws IllegalStateException {
+			VarnodeEvaluator evaluator = decompiled.get(caller);
+			if (evaluator != null)
+				return evaluator;
+			if (decompInterface == null) {
+				decompInterface = new DecompInterface();
+				decompInterface.openProgram(currentProgram);
+				metrics.recordDecompilerProcess();
+			}
+			long start = System.nanoTime();
+			Metrics.DecompileEvent event = metrics.beginDecompile(caller);
+			DecompileResults decompileResults = decompInterface.decompileFunction(caller, getDecompilerTimeout(),
+					taskMonitor);
+			long elapsed = System.nanoTime() - start;
+			metrics.endDecompile(event, elapsed, decompileResults.decompileCompleted());
+			if (!decompileResults.decompileCompleted())
+				throw new IllegalStateException();
+			decompileCount++;
+			slowestDecompile = Math.max(slowestDecompile, elapsed / 1e9);
+			evaluator = new VarnodeEvaluator(decompileResults.getHighFunction());
+			decompiled.put(caller, evaluator);
+			return evaluator;
+		}
+
+		private long[] extractWithDecompiler(Address addr) throws IllegalStateException, UnknownVariableCopy {
+			Function caller = getFunctionContaining(addr);
+			if (caller == null)
+				caller = getFunctionBefore(addr);
+			if (caller == null)
+				throw new IllegalStateException();
+			VarnodeEvaluator evaluator = decompile(caller);
+			Iterator<PcodeOpAST> pCodes = evaluator.getHighFunction().getPcodeOps(addr);
+			while (pCodes.hasNext()) {
+				PcodeOpAST instruction = pCodes.next();
+				if (instruction.getOpcode() == PcodeOp.CALL) {
+					return evaluator.evaluate(instruction.getInput(argumentIndex));
+				}
+			}
+			return new long[0];
 		}
-		return OptionalLong.empty();
 	}
 
-	private OptionalLong traceVarnodeValue(Varnode argument) throws UnknownVariableCopy {
-		while (!argument.isConstant()) {
-			PcodeOp ins = argument.getDef();
-			if (ins == null)
-				break;
-			switch (ins.getOpcode()) {
-			case PcodeOp.CAST:
+	/*-
+	 * Folds the value of a varnode in the SSA graph of a decompiled function into the set of
+	 * constants it can take. MULTIEQUAL yields the union of its inputs, so a hash selected on
+	 * different branches is reported as one of several constants. Values are memoized per varnode,
+	 * so all call sites within the same function share the work.
+	 */
+	class VarnodeEvaluator {
+		private static final int MAX_CANDIDATES = 16;
+
+		private final HighFunction highFunction;
+		private final IdentityHashMap<Varnode, long[]> memo = new IdentityHashMap<Varnode, long[]>();
+		private final IdentityHashMap<Varnode, Boolean> inProgress = new IdentityHashMap<Varnode, Boolean>();
+		private final long[] cycle = new long[0];
+		private PcodeOp unsupportedOp = null;
+		private int cycleCount = 0;
+
+		VarnodeEvaluator(HighFunction highFunction) {
+			this.highFunction = highFunction;
+		}
+
+		public HighFunction getHighFunction() {
+			return highFunction;
+		}
+
+		/**
+		 * @return the sorted, distinct constants the varnode may take; empty if it cannot be folded.
+		 */
+		public long[] evaluate(Varnode varnode) throws UnknownVariableCopy {
+			unsupportedOp = null;
+			long[] values = fold(varnode);
+			if (values == null || values == cycle) {
+				if (unsupportedOp != null)
+					throw new UnknownVariableCopy(unsupportedOp, unsupportedOp.getSeqnum().getTarget());
+				return new long[0];
+			}
+			return values;
+		}
+
+		private long mask(long value, int size) {
+			return size >= 8 ? value : value & ((1L << (8 * size)) - 1);
+		}
+
+		private long signExtend(long value, int size) {
+			return size >= 8 ? value : (value << (64 - 8 * size)) >> (64 - 8 * size);
+		}
+
+		private long[] fold(Varnode varnode) {
+			if (varnode.isConstant())
+				return new long[] { varnode.getOffset() };
+			if (memo.containsKey(varnode))
+				return memo.get(varnode);
+			if (inProgress.containsKey(varnode)) {
+				cycleCount++;
+				return cycle;
+			}
+			PcodeOp op = varnode.getDef();
+			if (op == null)
+				return null;
+			inProgress.put(varnode, true);
+			int cyclesBefore = cycleCount;
+			long[] values;
+			try {
+				values = foldOp(op, varnode.getSize());
+			} finally {
+				inProgress.remove(varnode);
+			}
+			if (values != null && values != cycle && values.length > MAX_CANDIDATES)
+				values = null;
+			if (cycleCount == cyclesBefore || inProgress.isEmpty())
+				memo.put(varnode, values);
+			return values;
+		}
+
+		private long[] foldOp(PcodeOp op, int size) {
+			switch (op.getOpcode()) {
 			case PcodeOp.COPY:
-				argument = ins.getInput(0);
-				break;
+			case PcodeOp.CAST:
+				return fold(op.getInput(0));
+			case PcodeOp.MULTIEQUAL: {
+				TreeSet<Long> union = new TreeSet<Long>();
+				for (Varnode input : op.getInputs()) {
+					long[] values = fold(input);
+					if (values == cycle)
+						continue;
+					if (values == null)
+						return null;
+					for (long value : values)
+						union.add(value);
+				}
+				if (union.isEmpty())
+					return cycle;
+				return union.stream().mapToLong(Long::longValue).toArray();
+			}
+			case PcodeOp.INT_ZEXT:
+			case PcodeOp.INT_SEXT:
+			case PcodeOp.INT_NEGATE:
+			case PcodeOp.INT_2COMP:
+				return unary(op, size);
+			case PcodeOp.INT_ADD:
+			case PcodeOp.INT_SUB:
+			case PcodeOp.INT_XOR:
+			case PcodeOp.INT_AND:
+			case PcodeOp.INT_OR:
+			case PcodeOp.INT_MULT:
+			case PcodeOp.INT_LEFT:
+			case PcodeOp.INT_RIGHT:
+			case PcodeOp.INT_SRIGHT:
+			case PcodeOp.SUBPIECE:
+			case PcodeOp.PIECE:
 			case PcodeOp.PTRSUB:
-			case PcodeOp.PTRADD:
-				argument = ins.getInput(1);
-				break;
+				return binary(op, size);
+			case PcodeOp.PTRADD: {
+				long[] base = fold(op.getInput(0));
+				long[] index = fold(op.getInput(1));
+				if (!isKnown(base) || !isKnown(index))
+					return null;
+				long elementSize = op.getInput(2).getOffset();
+				return combine(base, index, size, (a, b) -> a + b * elementSize);
+			}
+			case PcodeOp.LOAD:
+				return load(op, size);
+			case PcodeOp.INDIRECT:
+				return null;
+			default:
+				unsupportedOp = op;
+				return null;
+			}
+		}
+
+		private boolean isKnown(long[] values) {
+			return values != null && values != cycle;
+		}
+
+		private long[] unary(PcodeOp op, int size) {
+			Varnode input = op.getInput(0);
+			long[] values = fold(input);
+			if (!isKnown(values))
+				return null;
+			long[] ret = new long[values.length];
+			for (int k = 0; k < values.length; k++) {
+				long value = values[k];
+				switch (op.getOpcode()) {
+				case PcodeOp.INT_SEXT:
+					value = signExtend(value, input.getSize());
+					break;
+				case PcodeOp.INT_NEGATE:
+					value = ~value;
+					break;
+				case PcodeOp.INT_2COMP:
+					value = -value;
+					break;
+				default:
+					break;
+				}
+				ret[k] = mask(value, size);
+			}
+			return Arrays.stream(ret).sorted().distinct().toArray();
+		}
+
+		private long[] binary(PcodeOp op, int size) {
+			long[] left = fold(op.getInput(0));
+			long[] right = fold(op.getInput(1));
+			if (!isKnown(left) || !isKnown(right))
+				return null;
+			int leftSize = op.getInput(0).getSize();
+			int rightSize = op.getInput(1).getSize();
+			switch (op.getOpcode()) {
+			case PcodeOp.INT_ADD:
+			case PcodeOp.PTRSUB:
+				return combine(left, right, size, (a, b) -> a + b);
+			case PcodeOp.INT_SUB:
+				return combine(left, right, size, (a, b) -> a - b);
+			case PcodeOp.INT_XOR:
+				return combine(left, right, size, (a, b) -> a ^ b);
+			case PcodeOp.INT_AND:
+				return combine(left, right, size, (a, b) -> a & b);
+			case PcodeOp.INT_OR:
+				return combine(left, right, size, (a, b) -> a | b);
 			case PcodeOp.INT_MULT:
-			case PcodeOp.MULTIEQUAL:
-				// known cases where an array is indexed
-				return OptionalLong.empty();
+				return combine(left, right, size, (a, b) -> a * b);
+			case PcodeOp.INT_LEFT:
+				return combine(left, right, size, (a, b) -> b >= 64 ? 0 : a << b);
+			case PcodeOp.INT_RIGHT:
+				return combine(left, right, size, (a, b) -> b >= 64 ? 0 : a >>> b);
+			case PcodeOp.INT_SRIGHT:
+				return combine(left, right, size,
+						(a, b) -> signExtend(a, leftSize) >> Math.min(b, 63));
+			case PcodeOp.SUBPIECE:
+				return combine(left, right, size, (a, b) -> b >= 8 ? 0 : a >>> (8 * b));
+			case PcodeOp.PIECE:
+				return combine(left, right, size, (a, b) -> (a << (8 * rightSize)) | b);
 			default:
-				// don't know how to handle this yet.
-				throw new UnknownVariableCopy(ins, argument.getAddress());
+				return null;
+			}
+		}
+
+		private long[] combine(long[] left, long[] right, int size, java.util.function.LongBinaryOperator operator) {
+			if ((long) left.length * right.length > MAX_CANDIDATES)
+				return null;
+			TreeSet<Long> ret = new TreeSet<Long>();
+			for (long a : left) {
+				for (long b : right) {
+					ret.add(mask(operator.applyAsLong(a, b), size));
+				}
+			}
+			return ret.stream().mapToLong(Long::longValue).toArray();
+		}
+
+		private long[] load(PcodeOp op, int size) {
+			long[] pointers = fold(op.getInput(1));
+			if (!isKnown(pointers))
+				return null;
+			AddressSpace space = currentProgram.getAddressFactory().getAddressSpace((int) op.getInput(0).getOffset());
+			if (space == null)
+				return null;
+			long[] ret = new long[pointers.length];
+			for (int k = 0; k < pointers.length; k++) {
+				Address address = space.getAddress(pointers[k]);
+				MemoryBlock block = currentProgram.getMemory().getBlock(address);
+				if (block == null || block.isWrite() || !block.isInitialized())
+					return null;
+				byte[] bytes = new byte[size];
+				try {
+					if (currentProgram.getMemory().getBytes(address, bytes) != size)
+						return null;
+				} catch (MemoryAccessException e) {
+					return null;
+				}
+				long value = 0;
+				boolean bigEndian = currentProgram.getLanguage().isBigEndian();
+				for (int j = 0; j < size; j++) {
+					value = (value << 8) | (bytes[bigEndian ? j : size - 1 - j] & 0xFFL);
+				}
+				ret[k] = value;
+			}
+			return Arrays.stream(ret).sorted().distinct().toArray();
+		}
+	}
+
+	/**
+	 * Extracts the constant arguments of the given calls and passes them to the sink. Call sites that
+	 * cannot be resolved statically are emulated at the end.
+	 */
+	private void scanCallArguments(List<Address> calls, CallArgumentExtractor extractor, TaskMonitor taskMonitor,
+			BiConsumer<Address, Long> sink) throws CancelledException {
+		LinkedHashMap<Address, Exception> unresolved = new LinkedHashMap<Address, Exception>();
+		try (Metrics.Phase phase = metrics.phase("extractArguments")) {
+			for (Address callAddr : calls) {
+				try {
+					long[] values = extractor.extract(callAddr);
+					if (values.length == 0) {
+						unresolved.put(callAddr, null);
+					} else {
+						if (values.length > 1) {
+							logVerbose("Call at 0x%x passes one of %d constants, adding all of them.",
+									callAddr.getOffset(), values.length);
+							logger.count("%d call sites pass one of several constants.");
+						}
+						for (long hash : values) {
+							sink.accept(callAddr, hash);
+						}
+					}
+				} catch (Exception e) {
+					unresolved.put(callAddr, e);
+				}
+				taskMonitor.incrementProgress(1);
+				taskMonitor.checkCanceled();
+			}
+		}
+		if (!unresolved.isEmpty()) {
+			taskMonitor.setMessage(
+					String.format("emulating %d call sites", unresolved.size()));
+			Map<Address, OptionalLong> emulated;
+			try (Metrics.Phase phase = metrics.phase("emulate")) {
+				emulated = extractor.emulate(new ArrayList<Address>(unresolved.keySet()));
+			}
+			for (Map.Entry<Address, Exception> entry : unresolved.entrySet()) {
+				Address callAddr = entry.getKey();
+				OptionalLong hash = emulated.getOrDefault(callAddr, OptionalLong.empty());
+				if (hash.isPresent()) {
+					sink.accept(callAddr, hash.getAsLong());
+				} else if (entry.getValue() == null) {
+					logVerbose("Cannot extract value for call at 0x%x", callAddr.getOffset());
+					logger.count("Cannot extract the value for %d call sites.");
+				} else {
+					logVerbose("Error while extracting parameter value from call at 0x%x: %s", callAddr.getOffset(),
+							getStackTraceAsString(entry.getValue()));
+					logger.count("Error while extracting the value for %d call sites.");
+				}
 			}
 		}
-		return OptionalLong.of(argument.getOffset());
 	}
 
 	private List<Address> getCallAddresses(Function deobfuscator) {
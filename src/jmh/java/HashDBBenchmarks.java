@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*-
+ * JMH suite for the code paths of HashDB.java that need neither a program nor the UI. Run it with
+ *
+ *   GHIDRA_INSTALL_DIR=<ghidra> gradle jmh
+ *
+ * The script's private members are reached through HashDB.BenchmarkTargets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HashDBBenchmarks {
+	private static final int PARSE_HASH_INPUTS = 1024;
+
+	@State(Scope.Benchmark)
+	public static class ParseHashState {
+		final HashDB.BenchmarkTargets targets = new HashDB.BenchmarkTargets();
+		final String[] inputs = new String[PARSE_HASH_INPUTS];
+
+		@Setup
+		public void setup() {
+			for (int k = 0; k < inputs.length; k++) {
+				long value = (k * 0x9E3779B1L) & 0xFFFFFFFFL;
+				switch (k % 3) {
+				case 0:
+					inputs[k] = String.format("0x%x", value);
+					break;
+				case 1:
+					inputs[k] = String.format("%Xh", value);
+					break;
+				default:
+					inputs[k] = Long.toString(value);
+					break;
+				}
+			}
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class ResponseState {
+		@Param({ "100", "1000", "10000" })
+		int size;
+
+		final HashDB.BenchmarkTargets targets = new HashDB.BenchmarkTargets();
+		String response;
+
+		@Setup
+		public void setup() {
+			response = targets.syntheticResponse(size);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class TransformationState {
+		@Param({ "identity", "xor", "revil" })
+		String transformation;
+
+		final HashDB.BenchmarkTargets targets = new HashDB.BenchmarkTargets();
+		String expression;
+		long hash = 0;
+
+		@Setup
+		public void setup() {
+			int index = Arrays.asList("identity", "xor", "revil").indexOf(transformation);
+			expression = HashDB.STOCK_TRANSFORMATIONS[index];
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ResultStoreState {
+		@Param({ "1000", "10000", "100000" })
+		int size;
+
+		final HashDB.BenchmarkTargets targets = new HashDB.BenchmarkTargets();
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			targets.prepareResults(size);
+			targets.fillResultStore();
+			targets.prunePermutations();
+		}
+	}
+
+	/*-
+	 * prunePermutations modifies the store, so every invocation gets a freshly filled one.
+	 */
+	@State(Scope.Thread)
+	public static class UnprunedStoreState {
+		@Param({ "1000", "10000", "100000" })
+		int size;
+
+		final HashDB.BenchmarkTargets targets = new HashDB.BenchmarkTargets();
+
+		@Setup(Level.Trial)
+		public void prepare() {
+			targets.prepareResults(size);
+		}
+
+		@Setup(Level.Invocation)
+		public void fill() {
+			targets.fillResultStore();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class DictionaryState {
+		@Param({ "crc32", "djb2", "fnv1a_32", "ror13_add", "sdbm" })
+		String algorithm;
+
+		@Param({ "100000" })
+		int size;
+
+		HashDB.BulkHasher.Dictionary dictionary;
+
+		@Setup
+		public void setup() {
+			ArrayList<String> names = new ArrayList<String>();
+			String[] prefixes = { "Nt", "Rtl", "Create", "Get", "Set", "Reg", "Internet", "Crypt" };
+			for (int k = 0; k < size; k++) {
+				names.add(String.format("%sFunction%dEx%s", prefixes[k % prefixes.length], k, k % 2 == 0 ? "W" : "A"));
+			}
+			dictionary = HashDB.BulkHasher.Dictionary.of(names);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PARSE_HASH_INPUTS)
+	public long parseHash(ParseHashState state) throws Exception {
+		long ret = 0;
+		for (String input : state.inputs) {
+			ret += state.targets.parseHash(input);
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public int parseHashInfoFromJson(ResponseState state) {
+		return state.targets.parseHashInfoFromJson(state.response);
+	}
+
+	@Benchmark
+	public long applyTransformation(TransformationState state) throws Exception {
+		state.hash = (state.hash + 0x9E3779B1L) & 0xFFFFFFFFL;
+		return state.targets.applyTransformation(state.hash, state.expression);
+	}
+
+	@Benchmark
+	public int resultStoreInsert(ResultStoreState state) {
+		return state.targets.fillResultStore();
+	}
+
+	@Benchmark
+	public int resultStorePrunePermutations(UnprunedStoreState state) throws Exception {
+		return state.targets.prunePermutations();
+	}
+
+	@Benchmark
+	public int resultStoreResolvedResults(ResultStoreState state) {
+		return state.targets.resolvedResults();
+	}
+
+	@Benchmark
+	public HashDB.BulkHasher.Table bulkHasher(DictionaryState state) {
+		return HashDB.BulkHasher.hash(state.dictionary, state.algorithm);
+	}
+}